@@ -4,6 +4,7 @@ import be.unamur.ct.decode.model.Certificate;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -27,4 +28,12 @@ public interface CertificateDao extends JpaRepository<Certificate, Integer> {
     Integer countByVATIsNullAndVatSearched(boolean vatSearched);
 
     long count();
+
+    boolean existsByFingerprint(String fingerprint);
+
+    /*
+     * Returns the ids and fingerprints of the certificates having a fingerprint, after the given id and in id order
+     */
+    @Query("select c.id, c.fingerprint from Certificate c where c.fingerprint is not null and c.id > :after order by c.id")
+    List<Object[]> findFingerprints(@Param("after") long after, Pageable pageable);
 }
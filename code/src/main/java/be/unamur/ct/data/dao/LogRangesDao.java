@@ -0,0 +1,10 @@
+package be.unamur.ct.data.dao;
+
+import be.unamur.ct.download.model.LogRanges;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface LogRangesDao extends JpaRepository<LogRanges, Long> {
+
+    LogRanges findByServerId(long serverId);
+
+}
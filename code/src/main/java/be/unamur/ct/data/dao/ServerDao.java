@@ -2,7 +2,14 @@ package be.unamur.ct.data.dao;
 
 import be.unamur.ct.download.model.Server;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+import java.util.List;
 
 @Repository
 public interface ServerDao extends JpaRepository<Server, Integer> {
@@ -11,4 +18,48 @@ public interface ServerDao extends JpaRepository<Server, Integer> {
 
     boolean existsByUrl(String url);
 
+    @Transactional
+    @Modifying
+    @Query("update Server s set s.pageSize = :pageSize where s.id = :id")
+    int updatePageSize(@Param("id") long id, @Param("pageSize") Integer pageSize);
+
+    @Transactional
+    @Modifying
+    @Query("update Server s set s.newestFirst = :newestFirst where s.id = :id")
+    int updateNewestFirst(@Param("id") long id, @Param("newestFirst") Boolean newestFirst);
+
+    @Transactional
+    @Modifying
+    @Query("update Server s set s.density = :density, s.sampled = :sampled, s.sampleRate = :sampleRate where s.id = :id")
+    int updateDensity(@Param("id") long id, @Param("density") String density, @Param("sampled") Date sampled,
+                      @Param("sampleRate") Long sampleRate);
+
+    List<Server> findByFollowTrue();
+
+    @Transactional
+    @Modifying
+    @Query("update Server s set s.follow = :follow where s.id = :id")
+    int updateFollow(@Param("id") long id, @Param("follow") Boolean follow);
+
+    /*
+     * Moves the tree size of the server from expected to treeSize, only if no one else moved it in the meantime.
+     * The caller owning the update is the only one to plan the entries between both sizes
+     */
+    @Transactional
+    @Modifying
+    @Query("update Server s set s.treeSize = :treeSize, s.lastPoll = :lastPoll " +
+            "where s.id = :id and coalesce(s.treeSize, 0) = :expected")
+    int claimTreeSize(@Param("id") long id, @Param("expected") long expected,
+                      @Param("treeSize") long treeSize, @Param("lastPoll") Date lastPoll);
+
+    @Transactional
+    @Modifying
+    @Query("update Server s set s.lastPoll = :lastPoll, s.pollInterval = :pollInterval where s.id = :id")
+    int updatePoll(@Param("id") long id, @Param("lastPoll") Date lastPoll, @Param("pollInterval") Long pollInterval);
+
+    @Transactional
+    @Modifying
+    @Query("update Server s set s.ingestAfter = :after, s.ingestBefore = :before where s.id = :id")
+    int updateBounds(@Param("id") long id, @Param("after") Date after, @Param("before") Date before);
+
 }
@@ -3,8 +3,12 @@ package be.unamur.ct.data.dao;
 import be.unamur.ct.download.model.Server;
 import be.unamur.ct.download.model.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface SliceDao extends JpaRepository<Slice, Integer> {
@@ -17,5 +21,30 @@ public interface SliceDao extends JpaRepository<Slice, Integer> {
     List<Slice> findByServerOrderByEndSliceDesc(Server server);
 
     List<Slice> findByServerOrderByStartSlice(Server server);
+
+    /*
+     * Returns the ids, among the given ones, of the slices still stored
+     */
+    @Query("select s.id from Slice s where s.id in :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    /*
+     * For each server, returns its id, the number of slices not completely downloaded and the number of entries left
+     */
+    @Query("select s.server.id, count(s), " +
+            "sum(case when s.descending = true then (s.next - s.startSlice) else (s.endSlice - s.next + 1) end) " +
+            "from Slice s where (s.descending = true and s.next > s.startSlice) " +
+            "or ((s.descending is null or s.descending = false) and s.next <= s.endSlice) group by s.server.id")
+    List<Object[]> countLeftByServer();
+
+    /*
+     * Deletes the slices of the server completely downloaded, except the one to keep
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from Slice s where s.server = :server and s.id <> :keep " +
+            "and ((s.descending = true and s.next <= s.startSlice) " +
+            "or ((s.descending is null or s.descending = false) and s.next > s.endSlice))")
+    int deleteCompleted(@Param("server") Server server, @Param("keep") long keep);
 }
 
@@ -0,0 +1,163 @@
+package be.unamur.ct.data.service;
+
+
+import be.unamur.ct.data.dao.SliceDao;
+import be.unamur.ct.download.model.Server;
+import be.unamur.ct.download.model.Slice;
+import be.unamur.ct.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+
+/**
+ * Service class saving the progress of the slices being downloaded.
+ * Instead of saving a slice after every request, threads downloading slices hand their slice to this service which
+ * merges the updates of all the active slices and saves them in a single transaction, either periodically or as soon
+ * as enough slices are waiting.  Pending updates are saved when the application stops.
+ * Slices deleted while their update was pending, such as completed slices cleared when the download of a server
+ * restarts, are not saved again.
+ *
+ * @see Slice
+ */
+@Service
+public class CheckpointService {
+
+    @Autowired
+    private SliceDao sliceDao;
+
+    @Autowired
+    private ThreadPool threadPool;
+
+    @Value("${checkpoint-interval-ms}")
+    private long interval;
+
+    @Value("${checkpoint-max-pending}")
+    private int maxPending;
+
+    private final Set<Slice> pending = new LinkedHashSet<>();
+    // Held while slices are saved or deleted, so that a slice is never saved once deleted
+    private final Object saving = new Object();
+    private Logger logger = LoggerFactory.getLogger(CheckpointService.class);
+
+
+    public CheckpointService() {}
+
+
+    /**
+     * Starts saving pending updates periodically
+     *
+     * @author Jules Dejaeghere
+     */
+    @PostConstruct
+    public void start() {
+        threadPool.getCheckpointExecutor()
+                .scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Records that the given slice has changed and must be saved.
+     * The slice is saved with the values it holds at the time of the next flush, not at the time of this call.
+     * Once the application is stopping, the slice is saved by the last flush.
+     *
+     * @author Jules Dejaeghere
+     * @param slice Slice to save
+     */
+    public void checkpoint(Slice slice) {
+        boolean full;
+        synchronized (pending) {
+            pending.add(slice);
+            full = pending.size() >= maxPending;
+        }
+
+        if (full) {
+            try {
+                threadPool.getCheckpointExecutor().execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // Shutting down, the slice stays pending until the flush run when the application stops
+            }
+        }
+    }
+
+
+    /**
+     * Saves all the pending slices in a single transaction, once a flush already running is over.
+     * Slices that no longer exist are dropped instead of being inserted again.
+     * If they cannot be saved, slices are kept pending until the next flush.
+     *
+     * @author Jules Dejaeghere
+     */
+    public void flush() {
+        synchronized (saving) {
+            List<Slice> batch;
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(pending);
+                pending.clear();
+            }
+
+            try {
+                Set<Long> existing = new HashSet<>(sliceDao.findExistingIds(
+                        batch.stream().map(Slice::getId).collect(Collectors.toList())));
+                batch.removeIf(slice -> !existing.contains(slice.getId()));
+                sliceDao.saveAll(batch);
+            } catch (RuntimeException e) {
+                logger.error("Cannot save " + batch.size() + " slices: " + e.getMessage());
+                synchronized (pending) {
+                    pending.addAll(batch);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Saves the pending slices, then deletes the slices of a server completely downloaded.
+     * No flush runs meanwhile, so that the slices deleted are not saved again by a flush that read them before.
+     *
+     * @author Jules Dejaeghere
+     * @param server Server to delete the slices of
+     * @param keep   Id of a slice to keep even if it is completely downloaded
+     * @return Number of slices deleted
+     */
+    public int deleteCompleted(Server server, long keep) {
+        synchronized (saving) {
+            flush();
+            return sliceDao.deleteCompleted(server, keep);
+        }
+    }
+
+
+    /**
+     * Saves pending updates before the application stops
+     *
+     * @author Jules Dejaeghere
+     */
+    @PreDestroy
+    public void stop() {
+        threadPool.getCheckpointExecutor().shutdown();
+        try {
+            threadPool.getCheckpointExecutor().awaitTermination(interval, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        logger.info("Slice checkpoints saved");
+    }
+}
@@ -0,0 +1,121 @@
+package be.unamur.ct.decode.model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Class used to represent a Bloom filter of SHA-256 fingerprints.
+ * A fingerprint put in the filter is always found again, a fingerprint never put is found with the false positive
+ * rate the filter was sized for, as long as it holds no more fingerprints than expected.
+ * Fingerprints are already uniformly distributed: the positions of a fingerprint are derived from its first 16 bytes
+ * by double hashing instead of hashing it again.
+ * Instances are thread-safe.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long size;
+    private final int hashes;
+
+
+    /**
+     * Constructor
+     *
+     * @author Jules Dejaeghere
+     * @param expected          Number of fingerprints the filter is expected to hold
+     * @param falsePositiveRate Rate of fingerprints never put that are found in the filter once it holds expected ones
+     */
+    public BloomFilter(long expected, double falsePositiveRate) {
+        expected = Math.max(1, expected);
+        long words = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)) / 64);
+        if (words > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bloom filter too large for " + expected + " fingerprints");
+        }
+
+        bits = new AtomicLongArray((int) Math.max(1, words));
+        size = (long) bits.length() * 64;
+        hashes = (int) Math.max(1, Math.round((double) size / expected * Math.log(2)));
+    }
+
+
+    /**
+     * Adds a fingerprint to the filter
+     *
+     * @author Jules Dejaeghere
+     * @param fingerprint SHA-256 of the element, at least 16 bytes
+     * @return true if the filter changed, false if the fingerprint may already have been put
+     */
+    public boolean put(byte[] fingerprint) {
+        long h1 = toLong(fingerprint, 0);
+        long h2 = toLong(fingerprint, 8);
+        boolean changed = false;
+
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, size);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+
+            long current;
+            while (((current = bits.get(word)) & mask) == 0) {
+                if (bits.compareAndSet(word, current, current | mask)) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        return changed;
+    }
+
+
+    /**
+     * Tells whether a fingerprint may have been put in the filter
+     *
+     * @author Jules Dejaeghere
+     * @param fingerprint SHA-256 of the element, at least 16 bytes
+     * @return false if the fingerprint has never been put, true if it may have been
+     */
+    public boolean mightContain(byte[] fingerprint) {
+        long h1 = toLong(fingerprint, 0);
+        long h2 = toLong(fingerprint, 8);
+
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, size);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static long toLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+
+    /**
+     * Returns the number of bits of the filter
+     *
+     * @author Jules Dejaeghere
+     * @return Number of bits
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public int getHashes() {
+        return hashes;
+    }
+
+    @Override
+    public String toString() {
+        return "BloomFilter{" +
+                "size=" + size +
+                ", hashes=" + hashes +
+                '}';
+    }
+}
@@ -33,6 +33,14 @@ public class Certificate {
     private String VAT;
     private boolean vatSearched = false;
 
+    // SHA-256 of the DER encoding of the certificate in hexadecimal, null for certificates stored before deduplication
+    @Column(unique = true, length = 64)
+    private String fingerprint;
+
+    // Names of the certificate belonging to the wanted domains, comma separated, null for certificates stored before
+    @Column(length = 65536)
+    private String domains;
+
     public Certificate() {
     }
 
@@ -112,6 +120,22 @@ public class Certificate {
         this.vatSearched = vatSearched;
     }
 
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public String getDomains() {
+        return domains;
+    }
+
+    public void setDomains(String domains) {
+        this.domains = domains;
+    }
+
     @Override
     public String toString() {
         return "Certificate{" +
@@ -124,6 +148,8 @@ public class Certificate {
                 ", versionNumber=" + versionNumber +
                 ", VAT='" + VAT + '\'' +
                 ", vatSearched=" + vatSearched +
+                ", fingerprint='" + fingerprint + '\'' +
+                ", domains='" + domains + '\'' +
                 '}';
     }
 }
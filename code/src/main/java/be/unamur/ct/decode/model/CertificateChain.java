@@ -0,0 +1,167 @@
+package be.unamur.ct.decode.model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+
+/**
+ * Class used to read the certificate chain found in the extra_data of a log entry, as defined by RFC 6962, without
+ * copying it.  Every certificate is prefixed by its length on 3 bytes.
+ *  - for an X.509 entry: certificate_chain, the list of the certificates, prefixed by its length on 3 bytes
+ *  - for a precertificate entry: pre_certificate, the precertificate as submitted, followed by precertificate_chain
+ *    laid out like certificate_chain
+ * The chain goes from the issuer of the logged certificate to a root accepted by the log, which is the last
+ * certificate of the chain.
+ * An instance may be reused to read several chains: parse returns the instance of the calling thread, so that reading
+ * a chain only allocates when it is longer than every chain read before by the thread.
+ *
+ * @see MerkleTreeLeaf
+ */
+public class CertificateChain {
+
+    private static final ThreadLocal<CertificateChain> pool = ThreadLocal.withInitial(CertificateChain::new);
+
+    private byte[] data;
+    private int precertificateOffset = -1;
+    private int precertificateLength;
+    private int size;
+    // Position and length of each certificate of the chain, one after the other
+    private int[] positions = new int[16];
+
+
+    public CertificateChain() {}
+
+
+    /**
+     * Reads a chain with the instance of the calling thread
+     *
+     * @author Jules Dejaeghere
+     * @param extraData Decoded extra_data of a log entry
+     * @param entryType Entry type of the MerkleTreeLeaf of the entry
+     * @return The instance of the calling thread, valid until the thread parses another chain
+     * @throws IllegalArgumentException if the chain is truncated or its lengths are inconsistent
+     */
+    public static CertificateChain parse(byte[] extraData, int entryType) {
+        return pool.get().wrap(extraData, entryType);
+    }
+
+
+    /**
+     * Reads a chain with this instance
+     *
+     * @author Jules Dejaeghere
+     * @param extraData Decoded extra_data of a log entry
+     * @param entryType Entry type of the MerkleTreeLeaf of the entry
+     * @return This instance
+     * @throws IllegalArgumentException if the chain is truncated or its lengths are inconsistent
+     */
+    public CertificateChain wrap(byte[] extraData, int entryType) {
+        data = extraData;
+        size = 0;
+        precertificateOffset = -1;
+        precertificateLength = 0;
+        if (extraData == null) {
+            throw new IllegalArgumentException("No extra_data");
+        }
+
+        int position = 0;
+        if (entryType == MerkleTreeLeaf.PRECERT_ENTRY) {
+            precertificateLength = MerkleTreeLeaf.readUnsigned(extraData, 0, 3);
+            precertificateOffset = 3;
+            position = precertificateOffset + precertificateLength;
+        }
+
+        int end = position + 3 + MerkleTreeLeaf.readUnsigned(extraData, position, 3);
+        if (end > extraData.length) {
+            throw new IllegalArgumentException("Truncated certificate chain");
+        }
+
+        position += 3;
+        while (position < end) {
+            int length = MerkleTreeLeaf.readUnsigned(extraData, position, 3);
+            if (position + 3 + length > end) {
+                throw new IllegalArgumentException("Certificate " + size + " goes past the end of the chain");
+            }
+
+            if (2 * size + 2 > positions.length) {
+                positions = Arrays.copyOf(positions, positions.length * 2);
+            }
+            positions[2 * size] = position + 3;
+            positions[2 * size + 1] = length;
+            size++;
+            position += 3 + length;
+        }
+        return this;
+    }
+
+
+    /**
+     * Returns the array wrapped by this instance, the positions returned by the other accessors are within this array
+     *
+     * @author Jules Dejaeghere
+     * @return The extra_data read
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Returns the number of certificates of the chain, the precertificate of a precertificate entry aside
+     *
+     * @author Jules Dejaeghere
+     * @return Number of certificates
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getOffset(int index) {
+        checkIndex(index);
+        return positions[2 * index];
+    }
+
+    public int getLength(int index) {
+        checkIndex(index);
+        return positions[2 * index + 1];
+    }
+
+    public ByteBuffer getCertificate(int index) {
+        return ByteBuffer.wrap(data, getOffset(index), getLength(index)).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the index of the root certificate, the last one of the chain
+     *
+     * @author Jules Dejaeghere
+     * @return Index of the root, -1 if the chain is empty
+     */
+    public int getRootIndex() {
+        return size - 1;
+    }
+
+    public boolean hasPrecertificate() {
+        return precertificateOffset >= 0;
+    }
+
+    public int getPrecertificateOffset() {
+        return precertificateOffset;
+    }
+
+    public int getPrecertificateLength() {
+        return precertificateLength;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Certificate " + index + " of a chain of " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CertificateChain{" +
+                "size=" + size +
+                ", precertificateLength=" + precertificateLength +
+                '}';
+    }
+}
@@ -0,0 +1,307 @@
+package be.unamur.ct.decode.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Class used to find the names of a certificate in its DER encoding, without parsing the whole certificate.
+ * The names are the common names of the subject and the DNS names of the subject alternative name extension.
+ * Only the structure of the certificate down to these names is read: the TBSCertificate, its subject and its
+ * extensions, every other field is skipped by its length.
+ * Names encoded as BMPString or UniversalString cannot be compared to ASCII suffixes byte per byte: they are not
+ * returned and the names are marked incomplete.
+ * An instance may be reused to read several certificates: parse returns the instance of the calling thread, so that
+ * reading names only allocates when a certificate has more names than every certificate read before by the thread.
+ *
+ * @see MerkleTreeLeaf
+ */
+public class CertificateNames {
+
+    private static final byte[] COMMON_NAME = {0x06, 0x03, 0x55, 0x04, 0x03};
+    private static final byte[] SUBJECT_ALT_NAME = {0x06, 0x03, 0x55, 0x1D, 0x11};
+
+    private static final int SEQUENCE = 0x30;
+    private static final int SET = 0x31;
+    private static final int VERSION = 0xA0;
+    private static final int EXTENSIONS = 0xA3;
+    private static final int BOOLEAN = 0x01;
+    private static final int OCTET_STRING = 0x04;
+    private static final int DNS_NAME = 0x82;
+
+    private static final ThreadLocal<CertificateNames> pool = ThreadLocal.withInitial(CertificateNames::new);
+
+    private byte[] data;
+    private int size;
+    // Position and length of each name, one after the other
+    private int[] positions = new int[16];
+    private boolean[] commonNames = new boolean[8];
+    private boolean complete;
+
+    // Element read by the last call to read
+    private int tag;
+    private int contentStart;
+    private int contentLength;
+
+
+    public CertificateNames() {}
+
+
+    /**
+     * Reads the names of a certificate with the instance of the calling thread
+     *
+     * @author Jules Dejaeghere
+     * @param data   Array holding the DER encoding
+     * @param offset Position of the first byte of the certificate
+     * @param length Number of bytes of the certificate
+     * @param tbs    true if the bytes are a TBSCertificate, as in a precertificate entry, false for a Certificate
+     * @return The instance of the calling thread, valid until the thread parses another certificate
+     * @throws IllegalArgumentException if the DER encoding is not the one of a certificate
+     */
+    public static CertificateNames parse(byte[] data, int offset, int length, boolean tbs) {
+        return pool.get().wrap(data, offset, length, tbs);
+    }
+
+
+    /**
+     * Reads the names of a certificate with this instance
+     *
+     * @author Jules Dejaeghere
+     * @param data   Array holding the DER encoding
+     * @param offset Position of the first byte of the certificate
+     * @param length Number of bytes of the certificate
+     * @param tbs    true if the bytes are a TBSCertificate, as in a precertificate entry, false for a Certificate
+     * @return This instance
+     * @throws IllegalArgumentException if the DER encoding is not the one of a certificate
+     */
+    public CertificateNames wrap(byte[] data, int offset, int length, boolean tbs) {
+        this.data = data;
+        size = 0;
+        complete = true;
+
+        int limit = offset + length;
+        if (limit > data.length) {
+            throw new IllegalArgumentException("Certificate goes past the end of the array");
+        }
+
+        // Certificate and TBSCertificate
+        int position = offset;
+        if (!tbs) {
+            read(position, limit, SEQUENCE);
+            position = contentStart;
+            limit = contentStart + contentLength;
+        }
+        read(position, limit, SEQUENCE);
+        position = contentStart;
+        limit = contentStart + contentLength;
+
+        // Version, serial number, signature algorithm, issuer and validity are skipped
+        position = read(position, limit, -1);
+        if (tag == VERSION) {
+            position = read(position, limit, -1);
+        }
+        position = read(position, limit, SEQUENCE);
+        position = read(position, limit, SEQUENCE);
+        position = read(position, limit, SEQUENCE);
+
+        position = read(position, limit, SEQUENCE);
+        readSubject(contentStart, contentStart + contentLength);
+
+        // Subject public key info, then the optional unique identifiers and extensions
+        position = read(position, limit, SEQUENCE);
+        while (position < limit) {
+            position = read(position, limit, -1);
+            if (tag == EXTENSIONS) {
+                read(contentStart, contentStart + contentLength, SEQUENCE);
+                readExtensions(contentStart, contentStart + contentLength);
+            }
+        }
+        return this;
+    }
+
+
+    /*
+     * Name: SEQUENCE OF RelativeDistinguishedName, each a SET OF AttributeTypeAndValue
+     */
+    private void readSubject(int position, int limit) {
+        while (position < limit) {
+            position = read(position, limit, SET);
+            int rdn = contentStart;
+            int rdnLimit = contentStart + contentLength;
+
+            while (rdn < rdnLimit) {
+                rdn = read(rdn, rdnLimit, SEQUENCE);
+                int attributeLimit = contentStart + contentLength;
+
+                int value = read(contentStart, attributeLimit, -1);
+                if (matches(contentStart - 2, COMMON_NAME)) {
+                    read(value, attributeLimit, -1);
+                    addName(tag, contentStart, contentLength, true);
+                }
+            }
+        }
+    }
+
+
+    /*
+     * Extensions: SEQUENCE OF Extension, each a SEQUENCE of its OID, critical flag and value in an OCTET STRING
+     * The value of the subject alternative name is GeneralNames: SEQUENCE OF GeneralName, tagged by their type
+     */
+    private void readExtensions(int position, int limit) {
+        while (position < limit) {
+            position = read(position, limit, SEQUENCE);
+            int extensionLimit = contentStart + contentLength;
+
+            int value = read(contentStart, extensionLimit, -1);
+            if (!matches(contentStart - 2, SUBJECT_ALT_NAME)) {
+                continue;
+            }
+
+            value = read(value, extensionLimit, -1);
+            if (tag == BOOLEAN) {
+                read(value, extensionLimit, -1);
+            }
+            if (tag != OCTET_STRING) {
+                throw new IllegalArgumentException("Invalid subject alternative name extension");
+            }
+
+            read(contentStart, contentStart + contentLength, SEQUENCE);
+            int name = contentStart;
+            int namesLimit = contentStart + contentLength;
+            while (name < namesLimit) {
+                name = read(name, namesLimit, -1);
+                if (tag == DNS_NAME) {
+                    addName(tag, contentStart, contentLength, false);
+                }
+            }
+        }
+    }
+
+
+    /*
+     * Reads the tag and length of the element at the given position, checks its tag unless expected is -1, and returns
+     * the position following the element.  Only single byte tags are expected in certificates.
+     */
+    private int read(int position, int limit, int expected) {
+        if (position + 2 > limit) {
+            throw new IllegalArgumentException("Truncated DER element at " + position);
+        }
+
+        tag = data[position] & 0xFF;
+        if (expected >= 0 && tag != expected) {
+            throw new IllegalArgumentException("Unexpected DER tag " + tag + " at " + position);
+        }
+
+        int length = data[position + 1] & 0xFF;
+        position += 2;
+        if (length > 0x80) {
+            int bytes = length & 0x7F;
+            if (bytes > 3 || position + bytes > limit) {
+                throw new IllegalArgumentException("Invalid DER length at " + position);
+            }
+            length = 0;
+            for (int i = 0; i < bytes; i++) {
+                length = (length << 8) | (data[position++] & 0xFF);
+            }
+        } else if (length == 0x80) {
+            throw new IllegalArgumentException("Indefinite DER length at " + position);
+        }
+
+        if (position + length > limit) {
+            throw new IllegalArgumentException("DER element goes past its parent at " + position);
+        }
+        contentStart = position;
+        contentLength = length;
+        return position + length;
+    }
+
+
+    private boolean matches(int position, byte[] oid) {
+        if (position < 0 || position + oid.length > data.length || contentLength != oid.length - 2) {
+            return false;
+        }
+        for (int i = 0; i < oid.length; i++) {
+            if (data[position + i] != oid[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private void addName(int type, int offset, int length, boolean commonName) {
+        // UTF8String, PrintableString, TeletexString, IA5String and VisibleString hold ASCII names byte per byte
+        if (commonName && type != 0x0C && type != 0x13 && type != 0x14 && type != 0x16 && type != 0x1A) {
+            complete = false;
+            return;
+        }
+
+        if (2 * size + 2 > positions.length) {
+            positions = Arrays.copyOf(positions, positions.length * 2);
+            commonNames = Arrays.copyOf(commonNames, commonNames.length * 2);
+        }
+        positions[2 * size] = offset;
+        positions[2 * size + 1] = length;
+        commonNames[size] = commonName;
+        size++;
+    }
+
+
+    /**
+     * Returns the array read by this instance, the positions returned by the other accessors are within this array
+     *
+     * @author Jules Dejaeghere
+     * @return The array holding the certificate
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getOffset(int index) {
+        checkIndex(index);
+        return positions[2 * index];
+    }
+
+    public int getLength(int index) {
+        checkIndex(index);
+        return positions[2 * index + 1];
+    }
+
+    public boolean isCommonName(int index) {
+        checkIndex(index);
+        return commonNames[index];
+    }
+
+    public String getName(int index) {
+        return new String(data, getOffset(index), getLength(index), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Tells whether every name of the certificate could be read as bytes comparable to ASCII
+     *
+     * @author Jules Dejaeghere
+     * @return false if some common name is encoded as BMPString or UniversalString
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Name " + index + " of " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("CertificateNames{");
+        for (int i = 0; i < size; i++) {
+            builder.append(i > 0 ? ", " : "").append(isCommonName(i) ? "CN=" : "DNS=").append(getName(i));
+        }
+        return builder.append(complete ? "" : ", incomplete").append('}').toString();
+    }
+}
@@ -0,0 +1,202 @@
+package be.unamur.ct.decode.model;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Class used to read the MerkleTreeLeaf structure of RFC 6962 found in the leaf_input of a log entry, without copying it.
+ * A MerkleTreeLeaf holds a TimestampedEntry:
+ *  - version (1 byte), leaf type (1 byte)
+ *  - timestamp (8 bytes), entry type (2 bytes)
+ *  - for an X.509 entry: the certificate, prefixed by its length on 3 bytes
+ *  - for a precertificate entry: the SHA-256 of the issuer key (32 bytes) and the TBSCertificate, prefixed by its
+ *    length on 3 bytes
+ *  - the extensions, prefixed by their length on 2 bytes
+ * Accessors return positions within the wrapped array, or read-only ByteBuffer views over it.
+ * An instance may be reused to read several leaves: parse returns the instance of the calling thread, so that reading
+ * a leaf allocates nothing.  The values read are only valid until the next leaf is wrapped by the same instance.
+ *
+ * @see CertificateChain
+ */
+public class MerkleTreeLeaf {
+
+    public static final int X509_ENTRY = 0;
+    public static final int PRECERT_ENTRY = 1;
+
+    private static final int TIMESTAMP_OFFSET = 2;
+    private static final int ENTRY_TYPE_OFFSET = 10;
+    private static final int ENTRY_OFFSET = 12;
+    private static final int ISSUER_KEY_HASH_LENGTH = 32;
+
+    private static final ThreadLocal<MerkleTreeLeaf> pool = ThreadLocal.withInitial(MerkleTreeLeaf::new);
+
+    private byte[] data;
+    private int entryType;
+    private int certificateOffset;
+    private int certificateLength;
+
+
+    public MerkleTreeLeaf() {}
+
+
+    /**
+     * Reads a leaf with the instance of the calling thread
+     *
+     * @author Jules Dejaeghere
+     * @param leafInput Decoded leaf_input of a log entry
+     * @return The instance of the calling thread, valid until the thread parses another leaf
+     * @throws IllegalArgumentException if the leaf is truncated or of an unknown entry type
+     */
+    public static MerkleTreeLeaf parse(byte[] leafInput) {
+        return pool.get().wrap(leafInput);
+    }
+
+
+    /**
+     * Reads a leaf with this instance
+     *
+     * @author Jules Dejaeghere
+     * @param leafInput Decoded leaf_input of a log entry
+     * @return This instance
+     * @throws IllegalArgumentException if the leaf is truncated or of an unknown entry type
+     */
+    public MerkleTreeLeaf wrap(byte[] leafInput) {
+        data = leafInput;
+        if (leafInput == null || leafInput.length < ENTRY_OFFSET + 3) {
+            throw new IllegalArgumentException("Truncated MerkleTreeLeaf");
+        }
+
+        entryType = readUnsigned(leafInput, ENTRY_TYPE_OFFSET, 2);
+        int position = ENTRY_OFFSET;
+        if (entryType == PRECERT_ENTRY) {
+            position += ISSUER_KEY_HASH_LENGTH;
+        } else if (entryType != X509_ENTRY) {
+            throw new IllegalArgumentException("Unknown entry type " + entryType);
+        }
+
+        certificateLength = readUnsigned(leafInput, position, 3);
+        certificateOffset = position + 3;
+        if (certificateOffset + certificateLength > leafInput.length) {
+            throw new IllegalArgumentException("Truncated certificate in MerkleTreeLeaf");
+        }
+        return this;
+    }
+
+
+    /**
+     * Reads a big-endian unsigned integer
+     *
+     * @author Jules Dejaeghere
+     * @param bytes  Array to read
+     * @param offset Position of the first byte of the integer
+     * @param length Number of bytes of the integer, at most 4
+     * @return The integer read
+     * @throws IllegalArgumentException if the integer goes past the end of the array
+     */
+    static int readUnsigned(byte[] bytes, int offset, int length) {
+        if (offset < 0 || offset + length > bytes.length) {
+            throw new IllegalArgumentException("Truncated length at " + offset);
+        }
+
+        int value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+
+    /**
+     * Reads the timestamp of a MerkleTreeLeaf, written in bytes 2 to 9 of its encoding
+     *
+     * @author Jules Dejaeghere
+     * @param leafInput Encoding of the MerkleTreeLeaf, the leaf_input of a log entry
+     * @return Time at which the entry was logged, in milliseconds since the epoch, -1 if the encoding is too short
+     */
+    public static long readTimestamp(byte[] leafInput) {
+        if (leafInput == null || leafInput.length < TIMESTAMP_OFFSET + 8) {
+            return -1;
+        }
+
+        long timestamp = 0;
+        for (int i = TIMESTAMP_OFFSET; i < TIMESTAMP_OFFSET + 8; i++) {
+            timestamp = (timestamp << 8) | (leafInput[i] & 0xFF);
+        }
+        return timestamp;
+    }
+
+
+    public int getVersion() {
+        return data[0] & 0xFF;
+    }
+
+    public int getLeafType() {
+        return data[1] & 0xFF;
+    }
+
+    public long getTimestamp() {
+        return readTimestamp(data);
+    }
+
+    public int getEntryType() {
+        return entryType;
+    }
+
+    public boolean isX509() {
+        return entryType == X509_ENTRY;
+    }
+
+    public boolean isPrecert() {
+        return entryType == PRECERT_ENTRY;
+    }
+
+    /**
+     * Returns the array wrapped by this instance, the positions returned by the other accessors are within this array
+     *
+     * @author Jules Dejaeghere
+     * @return The leaf_input read
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Returns the position of the certificate for an X.509 entry, or of the TBSCertificate for a precertificate entry
+     *
+     * @author Jules Dejaeghere
+     * @return Position of the first byte of the DER encoding
+     */
+    public int getCertificateOffset() {
+        return certificateOffset;
+    }
+
+    public int getCertificateLength() {
+        return certificateLength;
+    }
+
+    public ByteBuffer getCertificate() {
+        return ByteBuffer.wrap(data, certificateOffset, certificateLength).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the SHA-256 of the key of the issuer of a precertificate
+     *
+     * @author Jules Dejaeghere
+     * @return View over the hash, null for an X.509 entry
+     */
+    public ByteBuffer getIssuerKeyHash() {
+        if (!isPrecert()) {
+            return null;
+        }
+        return ByteBuffer.wrap(data, ENTRY_OFFSET, ISSUER_KEY_HASH_LENGTH).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public String toString() {
+        return "MerkleTreeLeaf{" +
+                "entryType=" + entryType +
+                ", timestamp=" + getTimestamp() +
+                ", certificateLength=" + certificateLength +
+                '}';
+    }
+}
@@ -0,0 +1,157 @@
+package be.unamur.ct.decode.model;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+
+/**
+ * Class used to tell whether domain names end with one of a set of suffixes, in a single pass over each name.
+ * The suffixes are compiled into a trie of their reversed characters: a name is read from its last byte to its first,
+ * following one node per byte, so that the cost of a lookup depends on the length of the name only, whatever the number
+ * of suffixes.
+ * Two kinds of suffixes are told apart:
+ *  - a suffix starting with a dot, like .be, matches the names ending with it, the subdomains of be
+ *  - a zone, like unamur.be, matches the name itself and its subdomains, but not another name ending with the same
+ *    characters like fakeunamur.be: a zone only matches on a label boundary
+ * Names are compared whatever their case.  Names holding other characters than letters, digits, '-', '_', '.' and '*'
+ * never match.
+ * Instances are immutable once compiled, and thread-safe.
+ */
+public class SuffixTrie {
+
+    private static final int ALPHABET;
+    private static final byte[] INDEX = new byte[128];
+
+    static {
+        Arrays.fill(INDEX, (byte) -1);
+        String alphabet = "abcdefghijklmnopqrstuvwxyz0123456789-_.*";
+        for (int i = 0; i < alphabet.length(); i++) {
+            INDEX[alphabet.charAt(i)] = (byte) i;
+            INDEX[Character.toUpperCase(alphabet.charAt(i))] = (byte) i;
+        }
+        ALPHABET = alphabet.length();
+    }
+
+    private static class Node {
+        private final Node[] children = new Node[ALPHABET];
+        // A suffix starting with a dot ends here: every name reaching this node matches
+        private boolean suffix;
+        // A zone ends here: a name reaching this node matches if it ends here or goes on with a new label
+        private boolean zone;
+    }
+
+    private final Node root = new Node();
+    private int size;
+
+
+    /**
+     * Constructor
+     *
+     * @author Jules Dejaeghere
+     * @param suffixes Suffixes to match, starting with a dot for subdomains only, or zones
+     * @throws IllegalArgumentException if a suffix is empty or holds characters that cannot appear in a domain name
+     */
+    public SuffixTrie(String... suffixes) {
+        for (String suffix : suffixes) {
+            add(suffix);
+        }
+    }
+
+
+    private void add(String suffix) {
+        String name = suffix.trim().toLowerCase(Locale.ROOT);
+        if (name.isEmpty() || name.equals(".")) {
+            throw new IllegalArgumentException("Empty domain suffix");
+        }
+
+        Node node = root;
+        for (int i = name.length() - 1; i >= 0; i--) {
+            int index = index(name.charAt(i));
+            if (index < 0) {
+                throw new IllegalArgumentException("Invalid character in domain suffix " + suffix);
+            }
+            if (node.children[index] == null) {
+                node.children[index] = new Node();
+            }
+            node = node.children[index];
+        }
+
+        if (name.charAt(0) == '.') {
+            node.suffix = true;
+        } else {
+            node.zone = true;
+        }
+        size++;
+    }
+
+
+    /**
+     * Tells whether a name ends with one of the suffixes
+     *
+     * @author Jules Dejaeghere
+     * @param name Domain name
+     * @return true if the name matches one of the suffixes
+     */
+    public boolean matches(String name) {
+        Node node = root;
+        for (int i = name.length() - 1; i >= 0; i--) {
+            int index = index(name.charAt(i));
+            node = index < 0 ? null : node.children[index];
+            if (node == null) {
+                return false;
+            }
+            if (node.suffix || node.zone && (i == 0 || name.charAt(i - 1) == '.')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Tells whether a name read as ASCII bytes within an array ends with one of the suffixes, without copying it
+     *
+     * @author Jules Dejaeghere
+     * @param data   Array holding the name
+     * @param offset Position of the first byte of the name
+     * @param length Number of bytes of the name
+     * @return true if the name matches one of the suffixes
+     */
+    public boolean matches(byte[] data, int offset, int length) {
+        Node node = root;
+        for (int i = offset + length - 1; i >= offset; i--) {
+            int index = index(data[i]);
+            node = index < 0 ? null : node.children[index];
+            if (node == null) {
+                return false;
+            }
+            if (node.suffix || node.zone && (i == offset || data[i - 1] == '.')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private static int index(int c) {
+        return c >= 0 && c < 128 ? INDEX[c] : -1;
+    }
+
+
+    /**
+     * Returns the number of suffixes compiled in the trie
+     *
+     * @author Jules Dejaeghere
+     * @return Number of suffixes
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "SuffixTrie{" +
+                "size=" + size +
+                '}';
+    }
+}
@@ -0,0 +1,82 @@
+package be.unamur.ct.decode.service;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.operator.DefaultAlgorithmNameFinder;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Service class holding the state shared by the threads decoding certificates.
+ * The certificates of the logs are signed with a handful of algorithms: their names are resolved once per OID instead
+ * of once per certificate.  The values of the fields taking few distinct values, such as the issuer and the signature
+ * algorithm, are interned so that the certificates waiting to be scrapped share a single instance of each value.
+ * Instances are thread-safe.
+ */
+@Service
+public class DecodeContext {
+
+    // Distinct values interned at most, the values of a field taking more values are not worth sharing
+    private static final int MAX_STRINGS = 65536;
+
+    private final DefaultAlgorithmNameFinder nameFinder = new DefaultAlgorithmNameFinder();
+    private final ConcurrentHashMap<ASN1ObjectIdentifier, String> algorithms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+
+
+    public DecodeContext() {}
+
+
+    /**
+     * Returns the name of a signature algorithm, resolved once per OID
+     *
+     * @author Jules Dejaeghere
+     * @param algorithm AlgorithmIdentifier of the signature of a certificate
+     * @return The name of the algorithm, or its OID if the algorithm is unknown
+     */
+    public String algorithmName(AlgorithmIdentifier algorithm) {
+        // The name of algorithms taking parameters, like RSASSA-PSS, depends on them: they are not cached
+        if (algorithm.getParameters() != null && !DERNull.INSTANCE.equals(algorithm.getParameters())) {
+            return intern(nameFinder.getAlgorithmName(algorithm));
+        }
+        return algorithms.computeIfAbsent(algorithm.getAlgorithm(),
+                oid -> intern(nameFinder.getAlgorithmName(new AlgorithmIdentifier(oid))));
+    }
+
+
+    /**
+     * Returns the shared instance of a value
+     *
+     * @author Jules Dejaeghere
+     * @param value Value to share
+     * @return An instance equal to the value, the same for every equal value as long as fewer than 65536 values are
+     * shared
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        String shared = strings.get(value);
+        if (shared != null) {
+            return shared;
+        }
+        if (strings.size() >= MAX_STRINGS) {
+            return value;
+        }
+        shared = strings.putIfAbsent(value, value);
+        return shared != null ? shared : value;
+    }
+
+
+    public int getAlgorithms() {
+        return algorithms.size();
+    }
+
+    public int getStrings() {
+        return strings.size();
+    }
+}
@@ -3,25 +3,37 @@ package be.unamur.ct.decode.service;
 import be.unamur.ct.data.dao.CertificateDao;
 import be.unamur.ct.decode.exceptions.NotAValidDomainException;
 import be.unamur.ct.decode.model.Certificate;
+import be.unamur.ct.decode.model.CertificateChain;
+import be.unamur.ct.decode.model.MerkleTreeLeaf;
 import be.unamur.ct.download.model.LogEntry;
 import be.unamur.ct.scrap.service.VATScrapper;
 import be.unamur.ct.scrap.thread.VATScrapperThread;
 import be.unamur.ct.thread.ThreadPool;
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1Primitive;
 import org.bouncycastle.asn1.x500.RDN;
 import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.bouncycastle.asn1.x500.style.IETFUtils;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.cert.X509CertificateHolder;
-import org.bouncycastle.operator.DefaultAlgorithmNameFinder;
 import org.bouncycastle.util.encoders.Base64;
+import org.bouncycastle.util.encoders.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Locale;
 
 
 /**
@@ -37,6 +49,18 @@ public class DecodeService {
     @Autowired
     private VATScrapper vatScrapper;
 
+    @Autowired
+    private DedupeService dedupeService;
+
+    @Autowired
+    private DomainFilter domainFilter;
+
+    @Autowired
+    private IssuerCache issuerCache;
+
+    @Autowired
+    private DecodeContext decodeContext;
+
     private Logger logger = LoggerFactory.getLogger(DecodeService.class);
 
     @Autowired
@@ -47,63 +71,107 @@ public class DecodeService {
 
 
     /**
-     * Decode a single log entry (a single certificate) from its Base64 form to
+     * Decode a single log entry (a single certificate) from its binary form to
      * a certificate as described in the Certificate class.
      * Once decoded, the certificate is saved in the database.
      *
      * @author Jules Dejaeghere
-     * @param entry LogEntry object representing the Base64 downloaded certificate
-     * @see Certificate
+     * @param entry LogEntry object representing the downloaded certificate
+     * @see #decodeBatch(List)
      */
     public void decodeToCert(LogEntry entry) {
-        // Get an object from the previously saved list and extract certificate
-        String leaf = entry.getLeaf();
-        String extra = entry.getData();
-        byte[] leafBin = Base64.decode(leaf);
+        decodeBatch(Collections.singletonList(entry));
+    }
+
+
+    /**
+     * Decode a batch of log entries from their binary form to certificates as described in the Certificate class.
+     * A certificate is decoded if its common name or one of its subject alternative DNS names belongs to the wanted
+     * domains: the subject saved is the first of them, the common name if it matches, and all of them are saved.
+     * Certificates having no name of the wanted domains in their DER encoding are dropped before being parsed.
+     * Certificates already stored, downloaded from another log, are dropped before being decoded further.
+     * Once the whole batch is decoded, its certificates are saved in the database together, then scrapped for VAT.
+     * An entry that cannot be decoded is logged and skipped, it does not prevent the other entries from being saved.
+     *
+     * @author Jules Dejaeghere
+     * @param entries LogEntry objects representing the downloaded certificates
+     * @see Certificate
+     */
+    public void decodeBatch(List<LogEntry> entries) {
+        List<Certificate> certificates = new ArrayList<>();
+        for (LogEntry entry : entries) {
+            // An entry failing to decode is dropped alone, the rest of the batch is decoded and saved
+            try {
+                Certificate certificate = decode(entry);
+                if (certificate != null) {
+                    certificates.add(certificate);
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Cannot decode entry " + entry.getId() + ": " + e);
+            }
+        }
+
+        for (Certificate certificate : save(certificates)) {
+            // NEXT STEP - Scrap for VAT
+            threadPool.getVATScrapperExecutor().execute(new VATScrapperThread(certificate, vatScrapper));
+        }
+    }
+
 
-        // Get certificate type (X.509 or PreCert)
-        int id = (leafBin[11] & 0xFF) | ((leafBin[10] & 0xFF) << 8);
-        int l = (leafBin[14] & 0xFF) | ((leafBin[13] & 0xFF) << 8) | ((leafBin[12] & 0x0F) << 16);
+    /**
+     * Decode a single log entry to a certificate, without saving it
+     *
+     * @author Jules Dejaeghere
+     * @param entry LogEntry object representing the downloaded certificate
+     * @return The certificate, or null if the entry is not a new certificate of the wanted domains
+     */
+    private Certificate decode(LogEntry entry) {
+        // Read the MerkleTreeLeaf of the entry in place, the certificate is not copied out of it
+        MerkleTreeLeaf leaf;
+        try {
+            leaf = MerkleTreeLeaf.parse(entry.getLeafInput());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Cannot read entry " + entry.getId() + ": " + e.getMessage());
+            return null;
+        }
+        byte[] extra = entry.getExtraData();
 
-        if (id == 0) {
+        // Only X.509 entries are decoded, precertificates are logged again as X.509 entries once issued
+        if (leaf.isX509()) {
 
             try {
-                // Extract only interesting part from certificate and create a X509CertificateHolder Object from it
-                byte[] certBin = Arrays.copyOfRange(leafBin, 15, l + 15);
-                X509CertificateHolder certX = new X509CertificateHolder(certBin);
+                // Create a X509CertificateHolder Object from the certificate within the leaf
+                byte[] leafBin = leaf.getData();
+                int offset = leaf.getCertificateOffset();
+                int length = leaf.getCertificateLength();
+                List<String> names = domainFilter.wantedNames(leafBin, offset, length, false);
+                if (names != null && names.isEmpty()) {
+                    return null;
+                }
+                X509CertificateHolder certX = certificateHolder(leafBin, offset, length);
 
                 try {
-                    String cns;
-                    RDN cn;
-
-                    // Get Subject
-                    try {
-                        cn = certX.getSubject().getRDNs(BCStyle.CN)[0];
-                        cns = IETFUtils.valueToString(cn.getFirst().getValue());
-                    } catch (IndexOutOfBoundsException e) {
-                        //logger.warn("Cannot get domain name");
-                        throw new NotAValidDomainException("createDomainFromCert(X509CertificateHolder) in DomainService: "
-                                + "Cannot get domain name");
+                    // Get the names of the wanted domains, if they could not be read before parsing
+                    if (names == null) {
+                        names = wantedNames(certX);
                     }
 
-                    // Check TLD
-                    if (cns == null || !(cns.endsWith(".be") || cns.endsWith(".vlaanderen") || cns.endsWith(".brussels"))) {
-                        throw new NotAValidDomainException("createDomainFromCert(X509CertificateHolder) in DomainService: "
-                                + cn + " is not a valid domain");
+                    // Skip certificates already stored
+                    byte[] fingerprint = dedupeService.fingerprint(leafBin, offset, length);
+                    if (dedupeService.isDuplicate(fingerprint)) {
+                        return null;
                     }
 
                     // Create certificate
-                    Certificate certificate = new Certificate(cns);
+                    Certificate certificate = new Certificate(names.get(0));
+                    certificate.setDomains(String.join(",", names));
+                    certificate.setFingerprint(Hex.toHexString(fingerprint));
 
                     // Get root CA
-                    String issuer = searchRoot(extra);
-                    certificate.setIssuer(issuer);
-
-                    certificate = setAttributes(certificate, certX);
-                    certificate = certificateDao.save(certificate);
+                    String issuer = searchRoot(extra, leaf.getEntryType());
+                    certificate.setIssuer(decodeContext.intern(issuer));
 
-                    // NEXT STEP - Scrap for VAT
-                    threadPool.getVATScrapperExecutor().execute(new VATScrapperThread(certificate, vatScrapper));
+                    return setAttributes(certificate, certX);
                 } catch (NotAValidDomainException e) {
                 }
 
@@ -111,13 +179,147 @@ public class DecodeService {
                 logger.warn("Cannot get certificate from binary");
             }
         }
+        return null;
+    }
+
+
+    /**
+     * Saves the certificates decoded from a batch of entries.
+     * The certificates are saved in a single transaction.  If one of them was stored meanwhile, decoded from another
+     * log by another thread, the transaction fails and they are saved one by one, the duplicates being dropped.
+     *
+     * @author Jules Dejaeghere
+     * @param certificates Certificates to save
+     * @return The certificates saved
+     */
+    private List<Certificate> save(List<Certificate> certificates) {
+        if (certificates.isEmpty()) {
+            return certificates;
+        }
+
+        try {
+            return certificateDao.saveAll(certificates);
+        } catch (DataIntegrityViolationException e) {
+            List<Certificate> saved = new ArrayList<>();
+            for (Certificate certificate : certificates) {
+                try {
+                    // The identifier given by the failed transaction was rolled back with it
+                    certificate.setId(0);
+                    saved.add(certificateDao.save(certificate));
+                } catch (DataIntegrityViolationException duplicate) {
+                    dedupeService.duplicate();
+                }
+            }
+            return saved;
+        }
+    }
+
+
+    /**
+     * Tells whether a log entry is a certificate of the wanted domains, without decoding it further
+     *
+     * @author Jules Dejaeghere
+     * @param entry LogEntry object representing the downloaded certificate
+     * @return true if the entry would be saved by decodeBatch, duplicates aside
+     * @see #decodeBatch(List)
+     */
+    public boolean isWanted(LogEntry entry) {
+        try {
+            MerkleTreeLeaf leaf = MerkleTreeLeaf.parse(entry.getLeafInput());
+            if (!leaf.isX509()) {
+                return false;
+            }
+
+            byte[] leafBin = leaf.getData();
+            int offset = leaf.getCertificateOffset();
+            int length = leaf.getCertificateLength();
+            List<String> names = domainFilter.wantedNames(leafBin, offset, length, false);
+            if (names != null) {
+                return !names.isEmpty();
+            }
+
+            wantedNames(certificateHolder(leafBin, offset, length));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Returns a X509CertificateHolder object for the DER encoding of a certificate within an array, without copying it
+     *
+     * @author Jules Dejaeghere
+     * @param data   Array holding the certificate
+     * @param offset Position of the first byte of the certificate
+     * @param length Number of bytes of the certificate
+     * @return X509CertificateHolder object representing the certificate
+     * @throws IOException if the bytes are not a valid certificate
+     */
+    public static X509CertificateHolder certificateHolder(byte[] data, int offset, int length) throws IOException {
+        try (ASN1InputStream in = new ASN1InputStream(new ByteArrayInputStream(data, offset, length), length)) {
+            ASN1Primitive object = in.readObject();
+            if (object == null) {
+                throw new IOException("No certificate");
+            }
+            return new X509CertificateHolder(org.bouncycastle.asn1.x509.Certificate.getInstance(object));
+        } catch (IllegalArgumentException | ClassCastException e) {
+            throw new IOException("Malformed certificate: " + e.getMessage(), e);
+        }
+    }
+
+
+    /**
+     * Returns the names of a certificate that belong to the wanted domains, parsed by BouncyCastle.
+     * This is only used for the certificates whose names could not be read from their DER encoding.
+     *
+     * @author Jules Dejaeghere
+     * @param certX X509CertificateHolder object representing the certificate
+     * @return The common names and subject alternative DNS names of the wanted domains, common names first
+     * @throws NotAValidDomainException if no name of the certificate belongs to one of the wanted domains
+     * @see DomainFilter#wantedNames(byte[], int, int, boolean)
+     */
+    private List<String> wantedNames(X509CertificateHolder certX) throws NotAValidDomainException {
+        List<String> names = new ArrayList<>();
+
+        // Get Subject
+        for (RDN cn : certX.getSubject().getRDNs(BCStyle.CN)) {
+            addWanted(names, IETFUtils.valueToString(cn.getFirst().getValue()));
+        }
+
+        // Get subject alternative names
+        GeneralNames sans = GeneralNames.fromExtensions(certX.getExtensions(), Extension.subjectAlternativeName);
+        if (sans != null) {
+            for (GeneralName san : sans.getNames()) {
+                if (san.getTagNo() == GeneralName.dNSName) {
+                    addWanted(names, san.getName().toString());
+                }
+            }
+        }
+
+        // Check TLD
+        if (names.isEmpty()) {
+            throw new NotAValidDomainException("createDomainFromCert(X509CertificateHolder) in DomainService: "
+                    + certX.getSubject() + " has no valid domain");
+        }
+        return names;
+    }
 
+
+    private void addWanted(List<String> names, String name) {
+        if (domainFilter.matches(name)) {
+            name = name.toLowerCase(Locale.ROOT);
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
     }
 
 
     /**
      * Returns a certificate filled with the validity period, the signature algorithm and the version number.
      * The details are extracted from a X509CertificateHolder object to be set in a Certificate object.
+     * The name of the signature algorithm is resolved and shared through the DecodeContext.
      *
      * @author Jules Dejaeghere
      * @param certificate Certificate object to be filled with the details
@@ -134,8 +336,7 @@ public class DecodeService {
 
         // Get Signature Algorithm
         AlgorithmIdentifier algoId = cert.getSignatureAlgorithm();
-        DefaultAlgorithmNameFinder nameFinder = new DefaultAlgorithmNameFinder();
-        String algoName = nameFinder.getAlgorithmName(algoId);
+        String algoName = decodeContext.algorithmName(algoId);
         certificate.setSignatureAlg(algoName);
 
         // Get Version Number
@@ -148,47 +349,65 @@ public class DecodeService {
 
     /**
      * Search the root Certificate Authority (CA) from the downloaded certificate in its Base64 representation.
-     * The Base64 data downloaded from the logs contains a chain of trust from the entity certified
-     * by the certificate up to a CA accepted by the log.
      *
      * @author Jules Dejaeghere
-     * @param extra_data extra_data field from the downloaded certificate, in Base64 representation
+     * @param extra_data extra_data field from the downloaded X.509 entry, in Base64 representation
      * @return String containing the name of the CA
      * @throws NotAValidDomainException if no CA can be found while parsing the data
+     * @see #searchRoot(byte[], int)
      */
     public String searchRoot(String extra_data) throws NotAValidDomainException {
-        /*
-         * Browse extra_data from the end to the beginning looking for a certificate.  The first certificate found is
-         * the certificate of the CA as it is the last one of the structure that is browsed from the end to the start.
-         *
-         * TODO:
-         *  find a better  way to determine the RootCA, the approach described above is probably not the best
-         */
+        return searchRoot(Base64.decode(extra_data), MerkleTreeLeaf.X509_ENTRY);
+    }
 
-        byte[] extraBin = Base64.decode(extra_data);
-        int start = extraBin.length - 5;
 
-        while (start >= 0) {
+    /**
+     * Search the root Certificate Authority (CA) from the downloaded certificate in its binary representation.
+     *
+     * @author Jules Dejaeghere
+     * @param extraBin extra_data field from the downloaded X.509 entry, decoded from Base64
+     * @return String containing the name of the CA
+     * @throws NotAValidDomainException if no CA can be found while parsing the data
+     * @see #searchRoot(byte[], int)
+     */
+    public String searchRoot(byte[] extraBin) throws NotAValidDomainException {
+        return searchRoot(extraBin, MerkleTreeLeaf.X509_ENTRY);
+    }
 
-            try {
-                // Get certificate type (X.509 or PreCert)
-                int id = (extraBin[start + 1] & 0xFF) | ((extraBin[start] & 0xFF) << 8);
-                int l = (extraBin[start + 4] & 0xFF) | ((extraBin[start + 3] & 0xFF) << 8) | ((extraBin[start + 2] & 0x0F) << 16);
 
-                byte[] certBin = Arrays.copyOfRange(extraBin, start + 5, l + start + 5);
+    /**
+     * Search the root Certificate Authority (CA) from the downloaded certificate in its binary representation.
+     * The data downloaded from the logs contains a chain of trust from the entity certified
+     * by the certificate up to a CA accepted by the log: the root is the last certificate of the chain.
+     * If the root has no common name, the closest certificate of the chain having one is used instead.
+     * The names are read from the IssuerCache: the certificates of the chain are only parsed the first time they are
+     * seen.
+     *
+     * @author Jules Dejaeghere
+     * @param extraBin  extra_data field from the downloaded certificate, decoded from Base64
+     * @param entryType Entry type of the MerkleTreeLeaf of the entry, telling how extra_data is laid out
+     * @return String containing the name of the CA
+     * @throws NotAValidDomainException if no CA can be found while parsing the data
+     * @see CertificateChain
+     */
+    public String searchRoot(byte[] extraBin, int entryType) throws NotAValidDomainException {
+        CertificateChain chain;
+        try {
+            chain = CertificateChain.parse(extraBin, entryType);
+        } catch (IllegalArgumentException e) {
+            throw new NotAValidDomainException("createDomainFromCert(X509CertificateHolder) in DomainService: " +
+                    "cannot read the chain: " + e.getMessage());
+        }
 
-                try {
-                    X509CertificateHolder certX = new X509CertificateHolder(certBin);
-                    RDN cn = certX.getSubject().getRDNs(BCStyle.CN)[0];
-                    String cns = IETFUtils.valueToString(cn.getFirst().getValue());
-                    return cns;
-                } catch (IOException e) {
-                } catch (IndexOutOfBoundsException e) {
+        for (int i = chain.getRootIndex(); i >= 0; i--) {
+            try {
+                String name = issuerCache.getName(chain.getData(), chain.getOffset(i), chain.getLength(i));
+                if (name != null) {
+                    return name;
                 }
-            } catch (Exception e) {
-                logger.warn(e.toString());
+            } catch (IOException e) {
+                logger.warn("Cannot get certificate " + i + " of the chain: " + e.getMessage());
             }
-            start--;
         }
         throw new NotAValidDomainException("createDomainFromCert(X509CertificateHolder) in DomainService: " +
                 "no CA found");
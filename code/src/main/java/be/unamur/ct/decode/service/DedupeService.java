@@ -0,0 +1,154 @@
+package be.unamur.ct.decode.service;
+
+import be.unamur.ct.data.dao.CertificateDao;
+import be.unamur.ct.decode.model.BloomFilter;
+import org.bouncycastle.util.encoders.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Service class detecting the certificates already stored, as the same certificate is submitted to several logs.
+ * Certificates are identified by the SHA-256 of their DER encoding, saved with them under a unique key.
+ * A Bloom filter of the fingerprints is checked first: a certificate it has never seen is new without querying the
+ * database, only the certificates it may have seen are looked up.  The filter is filled with the fingerprints stored
+ * when the application starts.  Two threads decoding the same certificate at once are told apart by the unique key.
+ *
+ * @see BloomFilter
+ */
+@Service
+public class DedupeService {
+
+    private static final int WARM_UP_PAGE = 10000;
+
+    @Autowired
+    private CertificateDao certificateDao;
+
+    @Value("${dedupe-enabled}")
+    private boolean enabled;
+
+    @Value("${dedupe-expected-certificates}")
+    private long expected;
+
+    @Value("${dedupe-false-positive-rate}")
+    private double falsePositiveRate;
+
+    private BloomFilter filter;
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final ThreadLocal<MessageDigest> digest = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    private Logger logger = LoggerFactory.getLogger(DedupeService.class);
+
+
+    public DedupeService() {}
+
+
+    /**
+     * Creates the Bloom filter and fills it with the fingerprints of the certificates already stored
+     *
+     * @author Jules Dejaeghere
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        filter = new BloomFilter(expected, falsePositiveRate);
+
+        long last = 0;
+        long count = 0;
+        List<Object[]> page;
+        do {
+            page = certificateDao.findFingerprints(last, PageRequest.of(0, WARM_UP_PAGE));
+            for (Object[] row : page) {
+                last = ((Number) row[0]).longValue();
+                filter.put(Hex.decode((String) row[1]));
+            }
+            count += page.size();
+        } while (page.size() == WARM_UP_PAGE);
+
+        logger.info("Deduplication filter of " + filter.getSize() / 8 / 1024 + " KB filled with " + count
+                + " fingerprints");
+    }
+
+
+    /**
+     * Returns the fingerprint of a certificate, read within an array without copying it
+     *
+     * @author Jules Dejaeghere
+     * @param data   Array holding the DER encoding of the certificate
+     * @param offset Position of the first byte of the certificate
+     * @param length Number of bytes of the certificate
+     * @return SHA-256 of the certificate
+     */
+    public byte[] fingerprint(byte[] data, int offset, int length) {
+        MessageDigest sha256 = digest.get();
+        sha256.update(data, offset, length);
+        return sha256.digest();
+    }
+
+
+    /**
+     * Tells whether a certificate is already stored, and records it as seen otherwise
+     *
+     * @author Jules Dejaeghere
+     * @param fingerprint Fingerprint of the certificate
+     * @return true if a certificate with the same fingerprint is stored, false if it is new or if deduplication is off
+     */
+    public boolean isDuplicate(byte[] fingerprint) {
+        if (!enabled) {
+            return false;
+        }
+
+        if (filter.mightContain(fingerprint)) {
+            lookups.incrementAndGet();
+            if (certificateDao.existsByFingerprint(Hex.toHexString(fingerprint))) {
+                duplicates.incrementAndGet();
+                return true;
+            }
+        }
+
+        filter.put(fingerprint);
+        return false;
+    }
+
+
+    /**
+     * Records a certificate found to be stored already when saving it, decoded by another thread meanwhile
+     *
+     * @author Jules Dejaeghere
+     */
+    public void duplicate() {
+        duplicates.incrementAndGet();
+    }
+
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+}
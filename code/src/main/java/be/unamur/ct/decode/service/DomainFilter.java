@@ -0,0 +1,123 @@
+package be.unamur.ct.decode.service;
+
+import be.unamur.ct.decode.model.CertificateNames;
+import be.unamur.ct.decode.model.SuffixTrie;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Service class telling whether certificates belong to the wanted domains, the names ending with one of the suffixes
+ * of domain-suffixes.
+ * The names of a certificate are its subject common names and the DNS names of its subject alternative name
+ * extension: a certificate belongs to the wanted domains if any of them matches.  The suffixes are compiled into a
+ * SuffixTrie, so that each name is matched in a single pass whatever the number of suffixes.
+ * Most entries of the logs are not certificates of the wanted domains: the names of a certificate are first looked for
+ * in its DER encoding, and only the certificates having a name that matches are parsed by BouncyCastle.  Certificates
+ * that cannot be read this way, or having names that cannot be compared byte per byte, are passed on to be parsed.
+ *
+ * @see CertificateNames
+ * @see SuffixTrie
+ */
+@Service
+public class DomainFilter {
+
+    @Value("${domain-suffixes}")
+    private String[] suffixes;
+
+    private SuffixTrie trie;
+    private final AtomicLong checked = new AtomicLong();
+    private final AtomicLong passed = new AtomicLong();
+
+
+    public DomainFilter() {}
+
+
+    /**
+     * Compiles the suffixes into the trie the names are matched with
+     *
+     * @author Jules Dejaeghere
+     */
+    @PostConstruct
+    public void start() {
+        trie = new SuffixTrie(suffixes);
+    }
+
+
+    /**
+     * Tells whether a name belongs to the wanted domains
+     *
+     * @author Jules Dejaeghere
+     * @param name Domain name
+     * @return true if the name ends with one of the suffixes, whatever its case
+     */
+    public boolean matches(String name) {
+        return name != null && trie.matches(name);
+    }
+
+
+    /**
+     * Returns the names of a certificate that belong to the wanted domains, reading them in its DER encoding
+     *
+     * @author Jules Dejaeghere
+     * @param data   Array holding the DER encoding of the certificate
+     * @param offset Position of the first byte of the certificate
+     * @param length Number of bytes of the certificate
+     * @param tbs    true if the bytes are a TBSCertificate, false for a Certificate
+     * @return The matching names, common names first and without duplicates, empty if no name matches, or null if the
+     * names cannot be read without parsing the certificate
+     */
+    public List<String> wantedNames(byte[] data, int offset, int length, boolean tbs) {
+        checked.incrementAndGet();
+
+        CertificateNames names;
+        try {
+            names = CertificateNames.parse(data, offset, length, tbs);
+        } catch (IllegalArgumentException e) {
+            passed.incrementAndGet();
+            return null;
+        }
+        if (!names.isComplete()) {
+            passed.incrementAndGet();
+            return null;
+        }
+
+        List<String> wanted = Collections.emptyList();
+        for (int i = 0; i < names.size(); i++) {
+            if (trie.matches(data, names.getOffset(i), names.getLength(i))) {
+                if (wanted.isEmpty()) {
+                    wanted = new ArrayList<>();
+                }
+                String name = names.getName(i).toLowerCase(Locale.ROOT);
+                if (!wanted.contains(name)) {
+                    wanted.add(name);
+                }
+            }
+        }
+
+        if (!wanted.isEmpty()) {
+            passed.incrementAndGet();
+        }
+        return wanted;
+    }
+
+
+    public String[] getSuffixes() {
+        return suffixes;
+    }
+
+    public long getChecked() {
+        return checked.get();
+    }
+
+    public long getPassed() {
+        return passed.get();
+    }
+}
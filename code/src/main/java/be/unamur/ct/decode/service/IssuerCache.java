@@ -0,0 +1,167 @@
+package be.unamur.ct.decode.service;
+
+import org.bouncycastle.asn1.x500.RDN;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x500.style.IETFUtils;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Service class caching the names of the certificate authorities found in the chains of the log entries.
+ * The chains of the logs are made of a few hundred distinct intermediates and roots: the common name of a CA is read
+ * once from its certificate, then found again by the SHA-256 of its DER encoding, without parsing it.
+ * The cache holds at most issuer-cache-size names, the least recently used ones are evicted first.  It is filled with
+ * the roots accepted by each log, returned by its get-roots endpoint, when the download of a log starts.
+ *
+ * @see DecodeService#searchRoot(byte[], int)
+ */
+@Service
+public class IssuerCache {
+
+    // Stored for the certificates without common name, so that they are not parsed again either
+    private static final String NO_NAME = "";
+
+    @Value("${issuer-cache-size}")
+    private int capacity;
+
+    private Map<ByteBuffer, String> names;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final ThreadLocal<MessageDigest> digest = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+
+    public IssuerCache() {}
+
+
+    /**
+     * Constructor
+     *
+     * @author Jules Dejaeghere
+     * @param capacity Maximum number of names held by the cache
+     */
+    public IssuerCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+
+    private synchronized Map<ByteBuffer, String> names() {
+        if (names == null) {
+            names = new LinkedHashMap<ByteBuffer, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ByteBuffer, String> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+        return names;
+    }
+
+
+    /**
+     * Returns the common name of the subject of a CA certificate, read from the cache when it was seen before
+     *
+     * @author Jules Dejaeghere
+     * @param data   Array holding the DER encoding of the certificate
+     * @param offset Position of the first byte of the certificate
+     * @param length Number of bytes of the certificate
+     * @return The common name of the subject, or null if the certificate has none
+     * @throws IOException if the certificate is not cached and cannot be parsed
+     */
+    public String getName(byte[] data, int offset, int length) throws IOException {
+        ByteBuffer key = fingerprint(data, offset, length);
+
+        String name;
+        synchronized (this) {
+            name = names().get(key);
+        }
+        if (name != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            name = parseName(data, offset, length);
+            synchronized (this) {
+                names().put(key, name);
+            }
+        }
+        return name.equals(NO_NAME) ? null : name;
+    }
+
+
+    /**
+     * Adds CA certificates to the cache, such as the roots accepted by a log
+     *
+     * @author Jules Dejaeghere
+     * @param certificates DER encodings of the certificates
+     * @return Number of certificates added, the ones already cached or that cannot be parsed aside
+     */
+    public int warmUp(List<byte[]> certificates) {
+        int added = 0;
+        for (byte[] certificate : certificates) {
+            ByteBuffer key = fingerprint(certificate, 0, certificate.length);
+            synchronized (this) {
+                if (names().containsKey(key)) {
+                    continue;
+                }
+            }
+
+            try {
+                String name = parseName(certificate, 0, certificate.length);
+                synchronized (this) {
+                    names().put(key, name);
+                }
+                added++;
+            } catch (IOException e) {
+                // Roots that cannot be parsed are parsed again, and fail again, if they are found in a chain
+            }
+        }
+        return added;
+    }
+
+
+    private ByteBuffer fingerprint(byte[] data, int offset, int length) {
+        MessageDigest sha256 = digest.get();
+        sha256.update(data, offset, length);
+        return ByteBuffer.wrap(sha256.digest());
+    }
+
+
+    private String parseName(byte[] data, int offset, int length) throws IOException {
+        X509CertificateHolder certX = DecodeService.certificateHolder(data, offset, length);
+        RDN[] cns = certX.getSubject().getRDNs(BCStyle.CN);
+        return cns.length > 0 ? IETFUtils.valueToString(cns[0].getFirst().getValue()) : NO_NAME;
+    }
+
+
+    public synchronized int size() {
+        return names == null ? 0 : names.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,85 @@
+package be.unamur.ct.decode.thread;
+
+import be.unamur.ct.decode.service.DecodeService;
+import be.unamur.ct.download.model.LogEntry;
+
+import java.util.List;
+
+
+/**
+ * Task decoding a batch of downloaded certificates, such as a page of a get-entries response or a chunk of it.
+ * A single task is queued to the decodeExecutor for the whole batch: the worker decodes the entries one after the
+ * other and the certificates found are saved together.
+ *
+ * @see DecodeService#decodeBatch(List)
+ */
+public class DecodeBatchTask implements Runnable {
+
+    private DecodeService decodeService;
+    private List<LogEntry> entries;
+    private Runnable onDone;
+
+
+    /**
+     * Constructor
+     *
+     * @author Jules Dejaeghere
+     * @param entries       Downloaded certificates
+     * @param decodeService Reference of the DecodeService to use
+     * @see LogEntry
+     */
+    public DecodeBatchTask(List<LogEntry> entries, DecodeService decodeService) {
+        this.entries = entries;
+        this.decodeService = decodeService;
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @author Jules Dejaeghere
+     * @param entries       Downloaded certificates
+     * @param decodeService Reference of the DecodeService to use
+     * @param onDone        Callback run once the batch has been decoded, even if decoding failed
+     * @see LogEntry
+     */
+    public DecodeBatchTask(List<LogEntry> entries, DecodeService decodeService, Runnable onDone) {
+        this.entries = entries;
+        this.decodeService = decodeService;
+        this.onDone = onDone;
+    }
+
+
+    public List<LogEntry> getEntries() {
+        return entries;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public DecodeService getDecodeService() {
+        return decodeService;
+    }
+
+    public boolean isTracked() {
+        return onDone != null;
+    }
+
+
+    /**
+     * Starts the decode process for the entries saved in the variables of the instance
+     *
+     * @author Jules Dejaeghere
+     */
+    @Override
+    public void run() {
+        try {
+            decodeService.decodeBatch(entries);
+        } finally {
+            if (onDone != null) {
+                onDone.run();
+            }
+        }
+    }
+}
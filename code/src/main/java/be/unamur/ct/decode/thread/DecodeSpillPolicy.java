@@ -0,0 +1,204 @@
+package be.unamur.ct.decode.thread;
+
+import be.unamur.ct.decode.service.DecodeService;
+import be.unamur.ct.download.model.LogEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Policy writing the entries rejected by a full decode executor to a file instead of keeping them in memory.
+ * A dedicated thread reads the spilled entries back, in the order they were written, and queues them again by batches
+ * as soon as the queue of the executor has room.  The file is emptied every time all the spilled entries were read back.
+ * Entries still in the file when the application stops are not decoded.
+ * If a batch cannot be written, it is decoded by the thread which submitted it.
+ *
+ * @see DecodeBatchTask
+ */
+public class DecodeSpillPolicy implements RejectedExecutionHandler {
+
+    private final File dir;
+    private final int batchSize;
+    private final Object lock = new Object();
+
+    private File path;
+    private RandomAccessFile file;
+    private long readPosition;
+    private long writePosition;
+    private long spilled;
+    private DecodeService decodeService;
+    private Thread drainer;
+
+    private Logger logger = LoggerFactory.getLogger(DecodeSpillPolicy.class);
+
+
+    /**
+     * Constructor
+     *
+     * @author Jules Dejaeghere
+     * @param dir       Directory where the spill file is created
+     * @param batchSize Maximum number of entries of the batches queued again
+     */
+    public DecodeSpillPolicy(File dir, int batchSize) {
+        this.dir = dir;
+        this.batchSize = batchSize;
+    }
+
+
+    /**
+     * Writes the entries of the rejected task to the spill file
+     *
+     * @author Jules Dejaeghere
+     * @param r        Task rejected by the executor
+     * @param executor Executor having rejected the task
+     * @throws RejectedExecutionException if the executor is shut down
+     */
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+
+        // Batches tracked by their producer are decoded right away, their callback would be lost in the file
+        if (r instanceof DecodeBatchTask && !((DecodeBatchTask) r).isTracked()) {
+            DecodeBatchTask task = (DecodeBatchTask) r;
+            synchronized (lock) {
+                long position = writePosition;
+                long count = spilled;
+                try {
+                    for (LogEntry entry : task.getEntries()) {
+                        write(entry);
+                    }
+                    decodeService = task.getDecodeService();
+                    startDrainer(executor);
+                    lock.notifyAll();
+                    return;
+                } catch (IOException e) {
+                    // The entries of the batch written before the error are dropped, the whole batch is decoded here
+                    writePosition = position;
+                    spilled = count;
+                    logger.error("Cannot spill a batch of " + task.size() + " entries: " + e.getMessage());
+                }
+            }
+        }
+
+        r.run();
+    }
+
+
+    /**
+     * Returns the number of entries waiting in the spill file
+     *
+     * @author Jules Dejaeghere
+     * @return Number of spilled entries
+     */
+    public long getSpilled() {
+        synchronized (lock) {
+            return spilled;
+        }
+    }
+
+
+    private void write(LogEntry entry) throws IOException {
+        if (file == null) {
+            path = File.createTempFile("decode-", ".spill", dir);
+            path.deleteOnExit();
+            file = new RandomAccessFile(path, "rw");
+            logger.info("Spilling entries to decode to " + path);
+        }
+
+        file.seek(writePosition);
+        file.writeLong(entry.getId());
+        file.writeInt(entry.getLeafInput().length);
+        file.write(entry.getLeafInput());
+        file.writeInt(entry.getExtraData().length);
+        file.write(entry.getExtraData());
+        writePosition = file.getFilePointer();
+        spilled++;
+    }
+
+
+    private LogEntry read() throws IOException {
+        file.seek(readPosition);
+        long id = file.readLong();
+        byte[] leafInput = new byte[file.readInt()];
+        file.readFully(leafInput);
+        byte[] extraData = new byte[file.readInt()];
+        file.readFully(extraData);
+        readPosition = file.getFilePointer();
+
+        // Start over at the beginning of the file once every spilled entry has been read back
+        if (--spilled == 0) {
+            file.setLength(0);
+            readPosition = 0;
+            writePosition = 0;
+        }
+
+        LogEntry entry = new LogEntry(leafInput, extraData);
+        entry.setId(id);
+        return entry;
+    }
+
+
+    private void startDrainer(ThreadPoolExecutor executor) {
+        if (drainer != null) {
+            return;
+        }
+
+        drainer = new Thread(() -> drain(executor), "Decode spill");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+
+    /**
+     * Queues the spilled entries again by batches, waiting for room in the queue of the executor
+     *
+     * @author Jules Dejaeghere
+     * @param executor Executor to queue the entries to
+     */
+    private void drain(ThreadPoolExecutor executor) {
+        try {
+            while (!executor.isShutdown()) {
+                DecodeBatchTask task;
+                synchronized (lock) {
+                    while (spilled == 0) {
+                        lock.wait();
+                    }
+                    List<LogEntry> entries = new ArrayList<>();
+                    while (spilled > 0 && entries.size() < batchSize) {
+                        entries.add(read());
+                    }
+                    task = new DecodeBatchTask(entries, decodeService);
+                }
+
+                while (!executor.getQueue().offer(task, 1, TimeUnit.SECONDS)) {
+                    if (executor.isShutdown()) {
+                        return;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.error("Cannot read spilled entries from " + path + ": " + e.getMessage());
+        } finally {
+            synchronized (lock) {
+                drainer = null;
+                if (spilled > 0) {
+                    logger.warn(spilled + " spilled entries were not decoded");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package be.unamur.ct.download.client;
+
+import be.unamur.ct.download.model.LogList;
+
+import java.io.IOException;
+
+
+/**
+ * Class used to represent the outcome of an asynchronous get-entries request.
+ * A page holds the requested range and either the entries returned by the log or the error raised by the request.
+ * The log may return fewer entries than requested.
+ */
+public class EntriesPage {
+
+    private final long start;
+    private final long end;
+    private final LogList entries;
+    private final IOException error;
+
+    public EntriesPage(long start, long end, LogList entries) {
+        this.start = start;
+        this.end = end;
+        this.entries = entries;
+        this.error = null;
+    }
+
+    public EntriesPage(long start, long end, IOException error) {
+        this.start = start;
+        this.end = end;
+        this.entries = null;
+        this.error = error;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public LogList getEntries() {
+        return entries;
+    }
+
+    public IOException getError() {
+        return error;
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+
+    /**
+     * Returns the number of entries of the requested range that were returned by the log
+     *
+     * @author Jules Dejaeghere
+     * @return Number of entries received, 0 if the request failed
+     */
+    public int getReceived() {
+        return entries == null ? 0 : (int) Math.min(entries.size(), end - start + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "EntriesPage{" +
+                "start=" + start +
+                ", end=" + end +
+                ", received=" + getReceived() +
+                ", error=" + error +
+                '}';
+    }
+}
@@ -0,0 +1,154 @@
+package be.unamur.ct.download.client;
+
+import be.unamur.ct.download.model.LogEntry;
+import be.unamur.ct.download.model.LogList;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+
+/**
+ * Streaming parser for the responses of the get-entries endpoint of a Certificate Transparency log server.
+ * The response is read token by token from the stream and the Base64 leaf_input and extra_data fields are decoded
+ * straight into byte arrays, so that neither the whole response nor the Base64 strings are ever held in memory.
+ * Instances are thread-safe and meant to be shared.
+ *
+ * @see LogList
+ */
+public class EntriesParser {
+
+    private static final String ENTRIES = "entries";
+    private static final String LEAF_INPUT = "leaf_input";
+    private static final String EXTRA_DATA = "extra_data";
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+
+    /**
+     * Parses a get-entries response read from the given stream.
+     * Entries are numbered from the given start index, in the order of the response.
+     *
+     * @author Jules Dejaeghere
+     * @param in    Stream to read the JSON response from
+     * @param start Index in the log of the first entry of the response
+     * @return A LogList holding the decoded entries
+     * @throws IOException if the stream cannot be read or does not contain a valid get-entries response
+     */
+    public LogList parse(InputStream in, long start) throws IOException {
+        LogList list = new LogList();
+
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            parseResponse(parser, parser.nextToken(), start, list::addEntry);
+        }
+
+        return list;
+    }
+
+
+    /**
+     * Parses every get-entries response read from the given stream, such as a dump of several responses written one
+     * after the other.  Entries are handed to the consumer as soon as they are decoded and numbered from the given
+     * start index, in the order of the stream.
+     *
+     * @author Jules Dejaeghere
+     * @param in       Stream to read the JSON responses from
+     * @param start    Index in the log of the first entry of the stream
+     * @param consumer Consumer receiving the decoded entries
+     * @return Number of entries read from the stream
+     * @throws IOException if the stream cannot be read or does not contain valid get-entries responses
+     */
+    public long parseAll(InputStream in, long start, Consumer<LogEntry> consumer) throws IOException {
+        long count = 0;
+
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                count += parseResponse(parser, token, start + count, consumer);
+            }
+        }
+
+        return count;
+    }
+
+
+    /**
+     * Parses a single get-entries response, the parser must be positioned on its first token
+     *
+     * @author Jules Dejaeghere
+     * @param parser   Parser positioned at the start of a response
+     * @param first    First token of the response
+     * @param start    Index in the log of the first entry of the response
+     * @param consumer Consumer receiving the decoded entries
+     * @return Number of entries of the response
+     * @throws IOException if the response cannot be read or is not a valid get-entries response
+     */
+    private long parseResponse(JsonParser parser, JsonToken first, long start, Consumer<LogEntry> consumer)
+            throws IOException {
+        expect(parser, first, JsonToken.START_OBJECT);
+        long count = 0;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if (ENTRIES.equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    LogEntry entry = parseEntry(parser);
+                    entry.setId(start + count++);
+                    consumer.accept(entry);
+                }
+                expect(parser, parser.getCurrentToken(), JsonToken.END_ARRAY);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+        return count;
+    }
+
+
+    /**
+     * Parses a single entry of the entries array.  The parser must be positioned on the START_OBJECT token of the
+     * entry and is left on its END_OBJECT token.
+     *
+     * @author Jules Dejaeghere
+     * @param parser Parser positioned at the start of an entry
+     * @return The decoded entry
+     * @throws IOException if the entry cannot be read or misses a field
+     */
+    private LogEntry parseEntry(JsonParser parser) throws IOException {
+        LogEntry entry = new LogEntry();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+
+            if (LEAF_INPUT.equals(field) && value == JsonToken.VALUE_STRING) {
+                entry.setLeafInput(parser.getBinaryValue());
+            } else if (EXTRA_DATA.equals(field) && value == JsonToken.VALUE_STRING) {
+                entry.setExtraData(parser.getBinaryValue());
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (entry.getLeafInput() == null || entry.getExtraData() == null) {
+            throw new JsonParseException(parser, "Entry without leaf_input or extra_data");
+        }
+
+        return entry;
+    }
+
+
+    private void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " but got " + actual);
+        }
+    }
+}
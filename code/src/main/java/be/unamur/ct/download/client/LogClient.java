@@ -0,0 +1,377 @@
+package be.unamur.ct.download.client;
+
+import be.unamur.ct.download.model.LogList;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+
+/**
+ * HTTP client dedicated to a single Certificate Transparency log server.
+ * One instance is shared by every thread downloading from the same log so that connections are pooled, kept alive
+ * and multiplexed over HTTP/2 when the log supports it, instead of paying a new TLS handshake for every request.
+ * Requests are paced by a rate limiter which slows down and backs off when the log fails or throttles requests.
+ * The client also counts the connections it opens, the TLS handshakes it performs and the requests served by an
+ * already opened connection.
+ *
+ * @see LogClientService
+ */
+public class LogClient {
+
+    private final String url;
+    private final OkHttpClient httpClient;
+    private final Semaphore permits;
+    private final int maxRequests;
+    private final RateLimiter limiter;
+
+    private static final EntriesParser parser = new EntriesParser();
+
+    private final AtomicInteger pageSize = new AtomicInteger();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong handshakes = new AtomicLong();
+    private final AtomicLong acquired = new AtomicLong();
+
+
+    /**
+     * Functional interface used to read a response while the request still holds its permit
+     *
+     * @param <T> Type of the value read from the response
+     */
+    public interface ResponseReader<T> {
+        T read(Response response) throws IOException;
+    }
+
+
+    /**
+     * Constructor
+     *
+     * @author Jules Dejaeghere
+     * @param url              Base URL of the log server, ending with a slash
+     * @param base             Client to derive the configuration from
+     * @param maxRequests      Maximum number of concurrent requests sent to the log
+     * @param keepAliveSeconds Time an idle connection is kept open before being closed
+     * @param limiter          Rate limiter pacing the requests sent to the log
+     */
+    public LogClient(String url, OkHttpClient base, int maxRequests, long keepAliveSeconds, RateLimiter limiter) {
+        this.url = url;
+        this.maxRequests = maxRequests;
+        this.limiter = limiter;
+        this.permits = new Semaphore(maxRequests, true);
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequests);
+
+        this.httpClient = base.newBuilder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(maxRequests, keepAliveSeconds, TimeUnit.SECONDS))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .retryOnConnectionFailure(true)
+                .eventListener(new StatsListener())
+                .build();
+    }
+
+
+    /**
+     * Executes a GET request on the log and hands the response to the reader.
+     * The number of concurrent requests is limited to the value given at construction and the request waits for the
+     * rate limiter, the response is always closed once read.
+     *
+     * @author Jules Dejaeghere
+     * @param path   Path of the endpoint, relative to the URL of the log (e.g. ct/v1/get-sth)
+     * @param reader Reader consuming the response
+     * @param <T>    Type of the value read from the response
+     * @return The value returned by the reader
+     * @throws IOException if the request fails or if the reader cannot read the response
+     */
+    public <T> T get(String path, ResponseReader<T> reader) throws IOException {
+        Request request = new Request.Builder()
+                .url(url + path)
+                .build();
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + url);
+        }
+
+        try {
+            acquireRate();
+            Response response;
+            try {
+                response = httpClient.newCall(request).execute();
+            } catch (IOException e) {
+                limiter.onFailure(0);
+                throw e;
+            }
+
+            try (Response r = response) {
+                requests.incrementAndGet();
+                record(r);
+                return reader.read(r);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+
+    /**
+     * Downloads the entries between start and end (both included) from the get-entries endpoint of the log.
+     * The response is parsed while it is read from the connection.
+     * The log may return fewer entries than requested.
+     *
+     * @author Jules Dejaeghere
+     * @param start Index of the first entry to download
+     * @param end   Index of the last entry to download
+     * @return A LogList holding the entries returned by the log
+     * @throws IOException if the request fails, if the log answers with an error or if the response cannot be parsed
+     */
+    public LogList getEntries(long start, long end) throws IOException {
+        return get(entriesPath(start, end), response -> readEntries(response, start, end));
+    }
+
+
+    /**
+     * Downloads the entries between start and end (both included) without blocking the calling thread.
+     * The request is run by the dispatcher of the client, which limits the number of concurrent requests to the log.
+     * The calling thread only waits for the rate limiter before the request is sent.
+     * The response is parsed on the dispatcher thread and handed to the consumer as a page, successful or not.
+     *
+     * @author Jules Dejaeghere
+     * @param start    Index of the first entry to download
+     * @param end      Index of the last entry to download
+     * @param consumer Consumer receiving the page once the request completed
+     * @return The call, that may be used to cancel the request
+     * @throws InterruptedIOException if the thread is interrupted while waiting for the rate limiter
+     */
+    public Call getEntriesAsync(long start, long end, Consumer<EntriesPage> consumer) throws InterruptedIOException {
+        acquireRate();
+
+        Request request = new Request.Builder()
+                .url(url + entriesPath(start, end))
+                .build();
+
+        Call call = httpClient.newCall(request);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (!call.isCanceled()) {
+                    limiter.onFailure(0);
+                }
+                consumer.accept(new EntriesPage(start, end, e));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                requests.incrementAndGet();
+                record(response);
+                try (Response r = response) {
+                    consumer.accept(new EntriesPage(start, end, readEntries(r, start, end)));
+                } catch (IOException e) {
+                    consumer.accept(new EntriesPage(start, end, e));
+                }
+            }
+        });
+
+        return call;
+    }
+
+
+    private void acquireRate() throws InterruptedIOException {
+        try {
+            limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the rate limit of " + url);
+        }
+    }
+
+
+    /**
+     * Reports the outcome of a request to the rate limiter.
+     * HTTP 429 and 503 are throttling answers honoring the Retry-After header, other server errors back off
+     * exponentially.  Other client errors do not mean that the log is overloaded and are not reported as failures.
+     *
+     * @author Jules Dejaeghere
+     * @param response Response received from the log
+     */
+    private void record(Response response) {
+        if (response.isSuccessful()) {
+            limiter.onSuccess();
+        } else if (response.code() == 429 || response.code() == 503) {
+            limiter.onFailure(retryAfter(response));
+        } else if (response.code() >= 500) {
+            limiter.onFailure(0);
+        }
+    }
+
+
+    /**
+     * Reads the Retry-After header of a response, given either as a number of seconds or as an HTTP date
+     *
+     * @author Jules Dejaeghere
+     * @param response Response received from the log
+     * @return Delay asked by the log in milliseconds, 0 if the header is missing or invalid
+     */
+    static long retryAfter(Response response) {
+        String value = response.header("Retry-After");
+        if (value == null) {
+            return 0;
+        }
+
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                long date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                        .toInstant().toEpochMilli();
+                return Math.max(0, date - System.currentTimeMillis());
+            } catch (DateTimeParseException e1) {
+                return 0;
+            }
+        }
+    }
+
+
+    private String entriesPath(long start, long end) {
+        return "ct/v1/get-entries?start=" + start + "&end=" + end;
+    }
+
+
+    private LogList readEntries(Response response, long start, long end) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new IOException("HTTP " + response.code() + " from " + url + " for entries " + start + "-" + end);
+        }
+        return parser.parse(response.body().byteStream(), start);
+    }
+
+
+    /**
+     * Updates the page size known for the log with the number of entries returned by a get-entries request.
+     * The page size of the log is the largest number of entries it ever returned for a single request.
+     *
+     * @author Jules Dejaeghere
+     * @param received Number of entries returned by the log for a single request
+     * @return true if the known page size has grown, false otherwise
+     */
+    public boolean learnPageSize(int received) {
+        int known = pageSize.get();
+        while (received > known) {
+            if (pageSize.compareAndSet(known, received)) {
+                return true;
+            }
+            known = pageSize.get();
+        }
+        return false;
+    }
+
+
+    /**
+     * Closes idle connections and stops the threads used by asynchronous calls
+     *
+     * @author Jules Dejaeghere
+     */
+    public void close() {
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+    }
+
+
+    public String getUrl() {
+        return url;
+    }
+
+    public OkHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public RateLimiter getLimiter() {
+        return limiter;
+    }
+
+    public int getPageSize() {
+        return pageSize.get();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getConnections() {
+        return connections.get();
+    }
+
+    public long getHandshakes() {
+        return handshakes.get();
+    }
+
+    public long getReusedConnections() {
+        return Math.max(0, acquired.get() - connections.get());
+    }
+
+    @Override
+    public String toString() {
+        return "LogClient{" +
+                "url='" + url + '\'' +
+                ", pageSize=" + pageSize +
+                ", requests=" + requests +
+                ", connections=" + connections +
+                ", handshakes=" + handshakes +
+                ", reused=" + getReusedConnections() +
+                ", rate=" + limiter.getRate() +
+                '}';
+    }
+
+
+    /**
+     * Listener counting opened connections, TLS handshakes and connections acquired by calls.
+     * A call acquiring a connection that was not opened for it is counted as a reuse.
+     */
+    private class StatsListener extends EventListener {
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            handshakes.incrementAndGet();
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            connections.incrementAndGet();
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            acquired.incrementAndGet();
+        }
+    }
+}
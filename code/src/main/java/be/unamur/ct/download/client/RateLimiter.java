@@ -0,0 +1,144 @@
+package be.unamur.ct.download.client;
+
+
+/**
+ * Token bucket limiting the rate of the requests sent to a single log server.
+ * The rate adapts to the answers of the log: it grows by about one request per second every second while requests
+ * succeed and is halved on every failure, down to the minimum rate.  A failure also blocks every request of the log
+ * for a backoff delay, either the delay asked by the log in a Retry-After header, or a delay doubling with every
+ * consecutive failure.
+ */
+public class RateLimiter {
+
+    private final double minRate;
+    private final double maxRate;
+    private final long baseBackoff;
+    private final long maxBackoff;
+
+    private double rate;
+    private double tokens;
+    private long refilled;
+    private long blockedUntil;
+    private int failures;
+
+
+    /**
+     * Constructor
+     *
+     * @author Jules Dejaeghere
+     * @param minRate     Minimum number of requests per second
+     * @param maxRate     Maximum number of requests per second, also the initial rate
+     * @param baseBackoff Delay in milliseconds after a first failure
+     * @param maxBackoff  Maximum delay in milliseconds after consecutive failures
+     */
+    public RateLimiter(double minRate, double maxRate, long baseBackoff, long maxBackoff) {
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.baseBackoff = baseBackoff;
+        this.maxBackoff = maxBackoff;
+        this.rate = maxRate;
+        this.tokens = 1;
+        this.refilled = now();
+    }
+
+
+    /**
+     * Waits until a request may be sent to the log
+     *
+     * @author Jules Dejaeghere
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        long delay;
+        while ((delay = reserve(now())) > 0) {
+            Thread.sleep(delay);
+        }
+    }
+
+
+    /**
+     * Takes a token from the bucket if one is available at the given time
+     *
+     * @author Jules Dejaeghere
+     * @param now Current time in milliseconds
+     * @return 0 if a token was taken, the number of milliseconds to wait before trying again otherwise
+     */
+    public synchronized long reserve(long now) {
+        if (now < blockedUntil) {
+            return blockedUntil - now;
+        }
+
+        // The bucket holds at most one second of requests
+        tokens = Math.min(Math.max(1, rate), tokens + Math.max(0, now - refilled) * rate / 1000);
+        refilled = now;
+
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) * 1000 / rate));
+    }
+
+
+    /**
+     * Records a request that succeeded
+     *
+     * @author Jules Dejaeghere
+     */
+    public synchronized void onSuccess() {
+        failures = 0;
+        rate = Math.min(maxRate, rate + 1 / rate);
+    }
+
+
+    /**
+     * Records a request that failed or was throttled by the log, and blocks the requests for a backoff delay
+     *
+     * @author Jules Dejaeghere
+     * @param retryAfter Delay in milliseconds asked by the log, 0 if the log did not ask for any delay
+     */
+    public void onFailure(long retryAfter) {
+        onFailure(retryAfter, now());
+    }
+
+
+    /**
+     * Records a request that failed or was throttled by the log at the given time
+     *
+     * @author Jules Dejaeghere
+     * @param retryAfter Delay in milliseconds asked by the log, 0 if the log did not ask for any delay
+     * @param now        Current time in milliseconds
+     */
+    public synchronized void onFailure(long retryAfter, long now) {
+        failures++;
+        rate = Math.max(minRate, rate / 2);
+        tokens = Math.min(tokens, 0);
+
+        long backoff = retryAfter > 0 ? retryAfter : Math.min(maxBackoff, baseBackoff << Math.min(failures - 1, 20));
+        blockedUntil = Math.max(blockedUntil, now + backoff);
+    }
+
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    public synchronized int getFailures() {
+        return failures;
+    }
+
+    /**
+     * Returns the time left before requests are allowed again
+     *
+     * @author Jules Dejaeghere
+     * @return Number of milliseconds left, 0 if requests are not blocked
+     */
+    public synchronized long getBackoff() {
+        return Math.max(0, blockedUntil - now());
+    }
+
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+}
@@ -0,0 +1,135 @@
+package be.unamur.ct.download.model;
+
+
+/**
+ * Class used to represent a slice while it is being downloaded.
+ * Besides the slice itself, it keeps the index of the next entry to request, so that the part of the slice that
+ * has not been requested yet can be handed to another thread.
+ * Descending slices are requested from their end: the part not requested yet is then at the start of the slice.
+ * The bounds of the slice may only be changed through this class while the slice is active.
+ */
+public class ActiveSlice {
+
+    private final Slice slice;
+    // Next index to request, or last index not requested yet for a descending slice
+    private long issued;
+
+    public ActiveSlice(Slice slice) {
+        this.slice = slice;
+        this.issued = slice.isDescending() ? slice.getNext() - 1 : slice.getNext();
+    }
+
+    public Slice getSlice() {
+        return slice;
+    }
+
+
+    /**
+     * Reserves the next range of the slice to request
+     *
+     * @author Jules Dejaeghere
+     * @param step Maximum number of entries to reserve
+     * @return Array holding the first and the last index of the range, null if the whole slice has been reserved
+     */
+    public synchronized long[] reserve(long step) {
+        if (slice.isDescending()) {
+            if (issued < slice.getStartSlice()) {
+                return null;
+            }
+
+            long end = issued;
+            long start = Math.max(end - step + 1, slice.getStartSlice());
+            issued = start - 1;
+
+            return new long[]{start, end};
+        }
+
+        if (issued > slice.getEndSlice()) {
+            return null;
+        }
+
+        long start = issued;
+        long end = Math.min(start + step - 1, slice.getEndSlice());
+        issued = end + 1;
+
+        return new long[]{start, end};
+    }
+
+
+    /**
+     * Returns the number of entries of the slice that have not been reserved yet
+     *
+     * @author Jules Dejaeghere
+     * @return Number of entries not yet requested
+     */
+    public synchronized long remaining() {
+        if (slice.isDescending()) {
+            return Math.max(0, issued - slice.getStartSlice() + 1);
+        }
+        return Math.max(0, slice.getEndSlice() - issued + 1);
+    }
+
+
+    /**
+     * Tells whether every entry of the slice has been downloaded
+     *
+     * @author Jules Dejaeghere
+     * @return true if nothing is left to download in the slice
+     */
+    public synchronized boolean isDone() {
+        return slice.isDone();
+    }
+
+
+    /**
+     * Returns the index of the first entry of the slice
+     *
+     * @author Jules Dejaeghere
+     * @return Index of the first entry of the slice
+     */
+    public synchronized long getStart() {
+        return slice.getStartSlice();
+    }
+
+
+    /**
+     * Returns the index of the last entry of the slice
+     *
+     * @author Jules Dejaeghere
+     * @return Index of the last entry of the slice
+     */
+    public synchronized long getEnd() {
+        return slice.getEndSlice();
+    }
+
+
+    /**
+     * Cuts the slice at the given index, if nothing has been requested from the part cut yet.
+     * The entries from the given index to the former end of the slice are no longer part of it, or the entries from
+     * the former start of the slice to the one before the given index for a descending slice.
+     *
+     * @author Jules Dejaeghere
+     * @param index First index to remove from the slice, or first index to keep for a descending slice
+     * @return The former end of the slice, or its former start for a descending slice, -1 if the slice cannot be cut
+     *         at this index
+     */
+    public synchronized long cut(long index) {
+        if (slice.isDescending()) {
+            long start = slice.getStartSlice();
+            if (index <= start || index > issued + 1) {
+                return -1;
+            }
+
+            slice.setStartSlice(index);
+            return start;
+        }
+
+        long end = slice.getEndSlice();
+        if (index <= issued || index > end) {
+            return -1;
+        }
+
+        slice.setEndSlice(index - 1);
+        return end;
+    }
+}
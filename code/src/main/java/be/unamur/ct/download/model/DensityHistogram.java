@@ -0,0 +1,195 @@
+package be.unamur.ct.download.model;
+
+import java.util.Arrays;
+
+
+/**
+ * Class used to represent the density of the wanted certificates along a log, estimated from a sample of its entries.
+ * The log is split into buckets of the same number of entries, each bucket holds the number of entries sampled in it
+ * and how many of them are certificates of the wanted domains.
+ * The histogram is saved on its server as text: the tree size sampled and the counts of each bucket,
+ * "treeSize:sampled/matched,sampled/matched,...".
+ * Instances are thread-safe.
+ *
+ * @see Server
+ */
+public class DensityHistogram {
+
+    private final long treeSize;
+    private final long[] sampled;
+    private final long[] matched;
+
+
+    /**
+     * Constructor
+     *
+     * @author Jules Dejaeghere
+     * @param treeSize Number of entries of the log when sampled
+     * @param buckets  Number of buckets the log is split into
+     */
+    public DensityHistogram(long treeSize, int buckets) {
+        this.treeSize = treeSize;
+        this.sampled = new long[Math.max(1, buckets)];
+        this.matched = new long[Math.max(1, buckets)];
+    }
+
+
+    /**
+     * Returns the bucket holding the entry of the given index
+     *
+     * @author Jules Dejaeghere
+     * @param index Index of the entry
+     * @return Index of the bucket
+     */
+    public int bucketOf(long index) {
+        if (treeSize <= 0) {
+            return 0;
+        }
+        return (int) Math.min(sampled.length - 1, Math.max(0, index) * sampled.length / treeSize);
+    }
+
+
+    /**
+     * Returns the index of the first entry of a bucket
+     *
+     * @author Jules Dejaeghere
+     * @param bucket Index of the bucket
+     * @return Index of the first entry of the bucket, treeSize for the bucket following the last one
+     */
+    public long startOf(int bucket) {
+        return (treeSize * bucket + sampled.length - 1) / sampled.length;
+    }
+
+
+    /**
+     * Records sampled entries of a bucket
+     *
+     * @author Jules Dejaeghere
+     * @param bucket  Index of the bucket
+     * @param entries Number of entries sampled
+     * @param matches Number of those entries that are certificates of the wanted domains
+     */
+    public synchronized void record(int bucket, long entries, long matches) {
+        sampled[bucket] += entries;
+        matched[bucket] += matches;
+    }
+
+
+    /**
+     * Returns the estimated share of the entries of a bucket that are certificates of the wanted domains
+     *
+     * @author Jules Dejaeghere
+     * @param bucket Index of the bucket
+     * @return Share of the entries, 0 if nothing was sampled in the bucket
+     */
+    public synchronized double getDensity(int bucket) {
+        return sampled[bucket] == 0 ? 0 : (double) matched[bucket] / sampled[bucket];
+    }
+
+
+    /**
+     * Returns the estimated share of the entries from start to end, both inclusive, that are certificates of the
+     * wanted domains, weighting each bucket by the number of its entries within the range
+     *
+     * @author Jules Dejaeghere
+     * @param start Index of the first entry
+     * @param end   Index of the last entry
+     * @return Share of the entries of the range
+     */
+    public synchronized double getDensity(long start, long end) {
+        if (end < start) {
+            return 0;
+        }
+
+        double matches = 0;
+        for (int b = bucketOf(start); b <= bucketOf(end); b++) {
+            long from = Math.max(start, startOf(b));
+            long to = Math.min(end, startOf(b + 1) - 1);
+            matches += getDensity(b) * Math.max(0, to - from + 1);
+        }
+        return matches / (end - start + 1);
+    }
+
+
+    /**
+     * Returns the estimated number of certificates of the wanted domains in the whole log
+     *
+     * @author Jules Dejaeghere
+     * @return Estimated number of certificates
+     */
+    public long getEstimatedMatches() {
+        return Math.round(getDensity(0, treeSize - 1) * treeSize);
+    }
+
+
+    /**
+     * Encodes the histogram as text, see the class description
+     *
+     * @author Jules Dejaeghere
+     * @return The encoded histogram
+     */
+    public synchronized String encode() {
+        StringBuilder builder = new StringBuilder().append(treeSize).append(':');
+        for (int b = 0; b < sampled.length; b++) {
+            builder.append(b > 0 ? "," : "").append(sampled[b]).append('/').append(matched[b]);
+        }
+        return builder.toString();
+    }
+
+
+    /**
+     * Decodes a histogram encoded by encode
+     *
+     * @author Jules Dejaeghere
+     * @param text Encoded histogram
+     * @return The decoded histogram, null if the text is null or empty
+     * @throws IllegalArgumentException if the text is not a valid encoding
+     */
+    public static DensityHistogram decode(String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+
+        try {
+            int colon = text.indexOf(':');
+            String[] buckets = text.substring(colon + 1).split(",");
+            DensityHistogram histogram = new DensityHistogram(Long.parseLong(text.substring(0, colon)), buckets.length);
+            for (int b = 0; b < buckets.length; b++) {
+                int slash = buckets[b].indexOf('/');
+                histogram.record(b, Long.parseLong(buckets[b].substring(0, slash)),
+                        Long.parseLong(buckets[b].substring(slash + 1)));
+            }
+            return histogram;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid density histogram: " + e.getMessage());
+        }
+    }
+
+
+    public long getTreeSize() {
+        return treeSize;
+    }
+
+    public int getBuckets() {
+        return sampled.length;
+    }
+
+    public synchronized long getSampled() {
+        return Arrays.stream(sampled).sum();
+    }
+
+    public synchronized long getMatched() {
+        return Arrays.stream(matched).sum();
+    }
+
+    @Override
+    public String toString() {
+        return "DensityHistogram{" +
+                "treeSize=" + treeSize +
+                ", buckets=" + sampled.length +
+                ", sampled=" + getSampled() +
+                ", matched=" + getMatched() +
+                ", estimatedMatches=" + getEstimatedMatches() +
+                '}';
+    }
+}
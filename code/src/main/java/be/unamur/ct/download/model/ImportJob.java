@@ -0,0 +1,110 @@
+package be.unamur.ct.download.model;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Class used to represent the import of a directory of get-entries dumps.
+ * Counters are updated by the threads reading the files, so a job may be displayed while it is running.
+ */
+public class ImportJob {
+
+    private final String path;
+    private final int files;
+    private final Date start = new Date();
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicLong entries = new AtomicLong();
+    private volatile Date end;
+
+
+    /**
+     * Constructor
+     *
+     * @author Jules Dejaeghere
+     * @param path  Directory or file being imported
+     * @param files Number of files to import
+     */
+    public ImportJob(String path, int files) {
+        this.path = path;
+        this.files = files;
+        if (files == 0) {
+            end = start;
+        }
+    }
+
+
+    /**
+     * Records a file read up to its end, or not read at all if it failed
+     *
+     * @author Jules Dejaeghere
+     * @param entries Number of entries read from the file
+     * @param failed  true if the file could not be read up to its end
+     */
+    public void fileDone(long entries, boolean failed) {
+        this.entries.addAndGet(entries);
+        if (failed) {
+            errors.incrementAndGet();
+        }
+        if (filesDone.incrementAndGet() == files) {
+            end = new Date();
+        }
+    }
+
+
+    /**
+     * Returns the average number of entries read per second since the job started, or over the whole job once done
+     *
+     * @author Jules Dejaeghere
+     * @return Number of entries read per second
+     */
+    public long getEntriesPerSecond() {
+        long elapsed = (end != null ? end.getTime() : System.currentTimeMillis()) - start.getTime();
+        return elapsed > 0 ? entries.get() * 1000 / elapsed : 0;
+    }
+
+    public boolean isDone() {
+        return filesDone.get() >= files;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public int getFilesDone() {
+        return filesDone.get();
+    }
+
+    public int getErrors() {
+        return errors.get();
+    }
+
+    public long getEntries() {
+        return entries.get();
+    }
+
+    public Date getStart() {
+        return start;
+    }
+
+    public Date getEnd() {
+        return end;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportJob{" +
+                "path='" + path + '\'' +
+                ", files=" + filesDone + "/" + files +
+                ", errors=" + errors +
+                ", entries=" + entries +
+                ", entriesPerSecond=" + getEntriesPerSecond() +
+                '}';
+    }
+}
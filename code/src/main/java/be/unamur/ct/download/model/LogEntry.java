@@ -1,45 +1,76 @@
 package be.unamur.ct.download.model;
 
 
-import com.fasterxml.jackson.annotation.JsonProperty;
+import be.unamur.ct.decode.model.MerkleTreeLeaf;
+import org.bouncycastle.util.encoders.Base64;
 
 /**
- * Class used to represent the Base64 data downloaded from Certificate Transparency log servers.
+ * Class used to represent the data downloaded from Certificate Transparency log servers.
  * This class is mainly used to represent a log entry between the downloading part and the decoding part.
+ * The leaf_input and extra_data fields are kept in their binary form, already decoded from Base64.
  * The class contains variables needed to represent a log entry and basic getters, setters and toString methods.
  */
 public class LogEntry {
 
     private long id;
 
-    @JsonProperty(value = "leaf_input")
-    private String leaf;
+    private byte[] leafInput;
 
-    @JsonProperty(value = "extra_data")
-    private String data;
+    private byte[] extraData;
 
     public LogEntry() {
     }
 
+    public LogEntry(byte[] leafInput, byte[] extraData) {
+        this.leafInput = leafInput;
+        this.extraData = extraData;
+    }
+
     public LogEntry(String leaf, String data) {
-        this.leaf = leaf;
-        this.data = data;
+        setLeaf(leaf);
+        setData(data);
+    }
+
+    public byte[] getLeafInput() {
+        return leafInput;
+    }
+
+    public void setLeafInput(byte[] leafInput) {
+        this.leafInput = leafInput;
+    }
+
+    public byte[] getExtraData() {
+        return extraData;
+    }
+
+    public void setExtraData(byte[] extraData) {
+        this.extraData = extraData;
     }
 
     public String getLeaf() {
-        return leaf;
+        return leafInput == null ? null : Base64.toBase64String(leafInput);
     }
 
     public void setLeaf(String leaf) {
-        this.leaf = leaf;
+        this.leafInput = leaf == null ? null : Base64.decode(leaf);
     }
 
     public String getData() {
-        return data;
+        return extraData == null ? null : Base64.toBase64String(extraData);
     }
 
     public void setData(String data) {
-        this.data = data;
+        this.extraData = data == null ? null : Base64.decode(data);
+    }
+
+    /**
+     * Returns the timestamp of the MerkleTreeLeaf of the entry, without parsing the rest of the leaf_input
+     *
+     * @author Jules Dejaeghere
+     * @return Time at which the entry was logged, in milliseconds since the epoch, -1 if the leaf_input is too short
+     */
+    public long getTimestamp() {
+        return MerkleTreeLeaf.readTimestamp(leafInput);
     }
 
     public long getId() {
@@ -54,9 +85,8 @@ public class LogEntry {
     public String toString() {
         return "LogEntry{" +
                 "id=" + id +
-                ", leaf='" + leaf + '\'' +
-                ", data='" + data + '\'' +
+                ", leafInput=" + (leafInput == null ? 0 : leafInput.length) + " bytes" +
+                ", extraData=" + (extraData == null ? 0 : extraData.length) + " bytes" +
                 '}';
     }
 }
-
@@ -0,0 +1,63 @@
+package be.unamur.ct.download.model;
+
+
+/**
+ * Class used to represent the download progress of a log server.
+ * Entries left are counted from the slices saved in the database, so they lag behind the threads downloading them by
+ * up to one checkpoint.
+ */
+public class LogProgress {
+
+    private final Server server;
+    private final long slicesLeft;
+    private final long entriesLeft;
+    private final int activeSlices;
+    private final int queuedSlices;
+    private final long downloaded;
+
+    public LogProgress(Server server, long slicesLeft, long entriesLeft, int activeSlices, int queuedSlices,
+                       long downloaded) {
+        this.server = server;
+        this.slicesLeft = slicesLeft;
+        this.entriesLeft = entriesLeft;
+        this.activeSlices = activeSlices;
+        this.queuedSlices = queuedSlices;
+        this.downloaded = downloaded;
+    }
+
+    public Server getServer() {
+        return server;
+    }
+
+    public long getSlicesLeft() {
+        return slicesLeft;
+    }
+
+    public long getEntriesLeft() {
+        return entriesLeft;
+    }
+
+    public int getActiveSlices() {
+        return activeSlices;
+    }
+
+    public int getQueuedSlices() {
+        return queuedSlices;
+    }
+
+    public long getDownloaded() {
+        return downloaded;
+    }
+
+    @Override
+    public String toString() {
+        return "LogProgress{" +
+                "server=" + server.getNickname() +
+                ", slicesLeft=" + slicesLeft +
+                ", entriesLeft=" + entriesLeft +
+                ", activeSlices=" + activeSlices +
+                ", queuedSlices=" + queuedSlices +
+                ", downloaded=" + downloaded +
+                '}';
+    }
+}
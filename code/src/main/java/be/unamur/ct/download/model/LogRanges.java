@@ -0,0 +1,105 @@
+package be.unamur.ct.download.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import javax.persistence.*;
+import java.util.Date;
+
+
+/**
+ * Entity class used to save the entries downloaded from a log server, as an encoded RangeSet.
+ * This class is used by JPA to create the corresponding SQL table in the database.
+ * The class contains variables needed to save the ranges of a log server and basic getters, setters and toString methods
+ *
+ * @see RangeSet
+ */
+@Entity
+public class LogRanges {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @JsonIgnore
+    @OneToOne(fetch = FetchType.EAGER, optional = false)
+    @JoinColumn(name = "server_id", nullable = false, unique = true)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Server server;
+
+    // Run-length encoding of the RangeSet, a few bytes for each hole of the log
+    @Column(length = 16777216)
+    private byte[] ranges;
+
+    // Number of entries downloaded and number of ranges, to display them without decoding the ranges
+    private Long entries;
+    private Integer rangeCount;
+
+    private Date updated;
+
+    public LogRanges() {}
+
+    public LogRanges(Server server) {
+        this.server = server;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public Server getServer() {
+        return server;
+    }
+
+    public void setServer(Server server) {
+        this.server = server;
+    }
+
+    public byte[] getRanges() {
+        return ranges;
+    }
+
+    public void setRanges(byte[] ranges) {
+        this.ranges = ranges;
+    }
+
+    public Long getEntries() {
+        return entries;
+    }
+
+    public void setEntries(Long entries) {
+        this.entries = entries;
+    }
+
+    public Integer getRangeCount() {
+        return rangeCount;
+    }
+
+    public void setRangeCount(Integer rangeCount) {
+        this.rangeCount = rangeCount;
+    }
+
+    public Date getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(Date updated) {
+        this.updated = updated;
+    }
+
+    @Override
+    public String toString() {
+        return "LogRanges{" +
+                "id=" + id +
+                ", serverId=" + server.getId() +
+                ", entries=" + entries +
+                ", rangeCount=" + rangeCount +
+                ", updated=" + updated +
+                '}';
+    }
+}
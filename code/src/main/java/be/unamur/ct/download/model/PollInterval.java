@@ -0,0 +1,78 @@
+package be.unamur.ct.download.model;
+
+import java.util.Date;
+
+
+/**
+ * Class used to represent the delay between two polls of a followed server, adapted to the growth rate of its log.
+ * The rate is smoothed over the last polls, and the delay is the time needed by the log to add the target number of
+ * entries at this rate.  If the log did not grow, the delay grows by half.  The delay always stays within its bounds.
+ *
+ * @see be.unamur.ct.download.service.FollowService
+ */
+public class PollInterval {
+
+    private final long minInterval;
+    private final long maxInterval;
+    private final long targetEntries;
+    private Date lastPoll;
+    private long interval;
+    private double rate;
+
+
+    /**
+     * Constructor
+     *
+     * @author Jules Dejaeghere
+     * @param minInterval   Shortest delay between two polls, in milliseconds
+     * @param maxInterval   Longest delay between two polls, in milliseconds
+     * @param targetEntries Number of new entries to find at each poll
+     * @param interval      Delay saved by the last run, null to start with the shortest delay
+     * @param lastPoll      Time of the last poll, null if the server was never polled
+     */
+    public PollInterval(long minInterval, long maxInterval, long targetEntries, Long interval, Date lastPoll) {
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.targetEntries = targetEntries;
+        this.interval = interval != null ? interval : minInterval;
+        this.lastPoll = lastPoll;
+    }
+
+
+    /**
+     * Adapts the delay before the next poll to the growth rate of the log
+     *
+     * @author Jules Dejaeghere
+     * @param added Number of entries added to the log since the last poll
+     * @param now   Time of the poll
+     * @return The delay before the next poll, in milliseconds
+     */
+    public synchronized long adapt(long added, Date now) {
+        long elapsed = lastPoll == null ? 0 : now.getTime() - lastPoll.getTime();
+        lastPoll = now;
+
+        if (added > 0 && elapsed > 0) {
+            double current = (double) added / elapsed;
+            rate = rate == 0 ? current : (rate + current) / 2;
+            interval = (long) (targetEntries / rate);
+        } else if (added == 0) {
+            interval += interval / 2;
+        }
+
+        interval = Math.max(minInterval, Math.min(maxInterval, interval));
+        return interval;
+    }
+
+
+    public synchronized long getInterval() {
+        return interval;
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    public synchronized Date getLastPoll() {
+        return lastPoll;
+    }
+}
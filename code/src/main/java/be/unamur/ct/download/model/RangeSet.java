@@ -0,0 +1,218 @@
+package be.unamur.ct.download.model;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Class used to represent the set of the entries of a log that have been downloaded, as disjoint ranges of indices.
+ * Ranges may be added in any order, adjacent and overlapping ranges are merged, so that a log downloaded without
+ * holes is a single range whatever the order in which its pages completed.
+ * The set is saved as a run-length encoding: the lengths of the holes and of the ranges one after the other, each
+ * written as a variable length integer, which takes a few bytes per hole.
+ * Instances are thread-safe.
+ *
+ * @see LogRanges
+ */
+public class RangeSet {
+
+    // Start of each range to its end, both inclusive
+    private final TreeMap<Long, Long> ranges = new TreeMap<>();
+    private long count;
+
+
+    public RangeSet() {}
+
+
+    /**
+     * Adds the entries from start to end, both inclusive, to the set
+     *
+     * @author Jules Dejaeghere
+     * @param start Index of the first entry
+     * @param end   Index of the last entry
+     * @return true if the set changed, false if it already held every entry of the range
+     */
+    public synchronized boolean add(long start, long end) {
+        if (end < start) {
+            return false;
+        }
+
+        // Merge with the range starting before or right after the new one, then with every range it overlaps
+        Map.Entry<Long, Long> before = ranges.floorEntry(start);
+        if (before != null && before.getValue() >= end) {
+            return false;
+        }
+        if (before != null && before.getValue() >= start - 1) {
+            start = before.getKey();
+        }
+
+        Map.Entry<Long, Long> next;
+        while ((next = ranges.ceilingEntry(start)) != null && next.getKey() <= end + 1) {
+            end = Math.max(end, next.getValue());
+            count -= next.getValue() - next.getKey() + 1;
+            ranges.remove(next.getKey());
+        }
+
+        ranges.put(start, end);
+        count += end - start + 1;
+        return true;
+    }
+
+
+    /**
+     * Tells whether the entry of the given index is in the set
+     *
+     * @author Jules Dejaeghere
+     * @param index Index of the entry
+     * @return true if the entry has been added to the set
+     */
+    public synchronized boolean contains(long index) {
+        Map.Entry<Long, Long> range = ranges.floorEntry(index);
+        return range != null && range.getValue() >= index;
+    }
+
+
+    /**
+     * Returns the ranges of entries between from and to, both inclusive, that are not in the set
+     *
+     * @author Jules Dejaeghere
+     * @param from Index of the first entry to check
+     * @param to   Index of the last entry to check
+     * @return List of the missing ranges, as the indices of their first and last entries, in increasing order
+     */
+    public synchronized List<long[]> gaps(long from, long to) {
+        List<long[]> gaps = new ArrayList<>();
+        long next = from;
+
+        Map.Entry<Long, Long> first = ranges.floorEntry(from);
+        if (first != null && first.getValue() >= from) {
+            next = first.getValue() + 1;
+        }
+
+        for (Map.Entry<Long, Long> range : ranges.tailMap(from, false).entrySet()) {
+            if (next > to) {
+                break;
+            }
+            if (range.getKey() > next) {
+                gaps.add(new long[]{next, Math.min(range.getKey() - 1, to)});
+            }
+            next = Math.max(next, range.getValue() + 1);
+        }
+
+        if (next <= to) {
+            gaps.add(new long[]{next, to});
+        }
+        return gaps;
+    }
+
+
+    /**
+     * Returns the ranges of the set
+     *
+     * @author Jules Dejaeghere
+     * @return List of the ranges, as the indices of their first and last entries, in increasing order
+     */
+    public synchronized List<long[]> getRanges() {
+        List<long[]> list = new ArrayList<>(ranges.size());
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            list.add(new long[]{range.getKey(), range.getValue()});
+        }
+        return list;
+    }
+
+
+    /**
+     * Encodes the set as the lengths of the holes and of the ranges, one after the other
+     *
+     * @author Jules Dejaeghere
+     * @return The encoded set
+     */
+    public synchronized byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(ranges.size() * 4 + 1);
+        long position = 0;
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            writeVarLong(out, range.getKey() - position);
+            writeVarLong(out, range.getValue() - range.getKey() + 1);
+            position = range.getValue() + 1;
+        }
+        return out.toByteArray();
+    }
+
+
+    /**
+     * Decodes a set encoded by toBytes
+     *
+     * @author Jules Dejaeghere
+     * @param bytes Encoded set, null for an empty set
+     * @return The decoded set
+     * @throws IllegalArgumentException if the bytes are not a valid encoding
+     */
+    public static RangeSet fromBytes(byte[] bytes) {
+        RangeSet set = new RangeSet();
+        if (bytes == null) {
+            return set;
+        }
+
+        int[] offset = {0};
+        long position = 0;
+        while (offset[0] < bytes.length) {
+            long start = position + readVarLong(bytes, offset);
+            long length = readVarLong(bytes, offset);
+            set.add(start, start + length - 1);
+            position = start + length;
+        }
+        return set;
+    }
+
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+
+    private static long readVarLong(byte[] bytes, int[] offset) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (offset[0] >= bytes.length) {
+                throw new IllegalArgumentException("Truncated range set");
+            }
+            byte b = bytes[offset[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Invalid range set");
+    }
+
+
+    /**
+     * Returns the number of entries in the set
+     *
+     * @author Jules Dejaeghere
+     * @return Number of entries
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized int getSize() {
+        return ranges.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("RangeSet{");
+        for (Map.Entry<Long, Long> range : ranges.entrySet()) {
+            builder.append(builder.length() > 9 ? ", " : "").append(range.getKey()).append('-').append(range.getValue());
+        }
+        return builder.append('}').toString();
+    }
+}
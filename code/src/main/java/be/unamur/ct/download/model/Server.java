@@ -1,8 +1,10 @@
 package be.unamur.ct.download.model;
 
 import org.hibernate.validator.constraints.Length;
+import org.springframework.format.annotation.DateTimeFormat;
 
 import javax.persistence.*;
+import java.util.Date;
 
 
 /**
@@ -23,6 +25,33 @@ public class Server {
 
     private String nickname;
 
+    // Maximum number of entries returned by the log for a single get-entries request, null until learned
+    private Integer pageSize;
+
+    // Share of the threads downloading slices given to the server compared to other servers, 1 when null
+    private Integer weight;
+
+    // Newest-first mode: slices are planned and downloaded from the head of the log backwards, false when null
+    private Boolean newestFirst;
+
+    // Tail-follow mode: size of the log already planned for download, time of the last get-sth and delay between polls
+    private Boolean follow;
+    private Long treeSize;
+    private Date lastPoll;
+    private Long pollInterval;
+
+    // Only the entries logged from ingestAfter and before ingestBefore are downloaded, no bound when null
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private Date ingestAfter;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private Date ingestBefore;
+
+    // Sampling mode: density of the wanted certificates along the log, time of the sample and entries sampled per second
+    @Column(length = 65536)
+    private String density;
+    private Date sampled;
+    private Long sampleRate;
+
     public Server() {}
 
     public Server(@Length(min = 10) String url) {
@@ -70,12 +99,144 @@ public class Server {
         this.nickname = nickname;
     }
 
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(Integer pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public Integer getWeight() {
+        return weight;
+    }
+
+    public void setWeight(Integer weight) {
+        this.weight = weight;
+    }
+
+    public boolean isNewestFirst() {
+        return newestFirst != null && newestFirst;
+    }
+
+    public void setNewestFirst(boolean newestFirst) {
+        this.newestFirst = newestFirst;
+    }
+
+    public boolean isFollow() {
+        return follow != null && follow;
+    }
+
+    public void setFollow(Boolean follow) {
+        this.follow = follow;
+    }
+
+    public Long getTreeSize() {
+        return treeSize;
+    }
+
+    public void setTreeSize(Long treeSize) {
+        this.treeSize = treeSize;
+    }
+
+    public Date getLastPoll() {
+        return lastPoll;
+    }
+
+    public void setLastPoll(Date lastPoll) {
+        this.lastPoll = lastPoll;
+    }
+
+    public Long getPollInterval() {
+        return pollInterval;
+    }
+
+    public void setPollInterval(Long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    public Date getIngestAfter() {
+        return ingestAfter;
+    }
+
+    public void setIngestAfter(Date ingestAfter) {
+        this.ingestAfter = ingestAfter;
+    }
+
+    public Date getIngestBefore() {
+        return ingestBefore;
+    }
+
+    public void setIngestBefore(Date ingestBefore) {
+        this.ingestBefore = ingestBefore;
+    }
+
+    public String getDensity() {
+        return density;
+    }
+
+    public void setDensity(String density) {
+        this.density = density;
+    }
+
+    /**
+     * Returns the density histogram of the server
+     *
+     * @author Jules Dejaeghere
+     * @return The histogram saved by the last sample, null if the server has never been sampled
+     */
+    public DensityHistogram getDensityHistogram() {
+        return DensityHistogram.decode(density);
+    }
+
+    public Date getSampled() {
+        return sampled;
+    }
+
+    public void setSampled(Date sampled) {
+        this.sampled = sampled;
+    }
+
+    public Long getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(Long sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public boolean isBounded() {
+        return ingestAfter != null || ingestBefore != null;
+    }
+
+    /**
+     * Tells whether an entry logged at the given time must be downloaded
+     *
+     * @author Jules Dejaeghere
+     * @param timestamp Timestamp of the entry, in milliseconds since the epoch
+     * @return true if the timestamp is within the ingest bounds of the server
+     */
+    public boolean accepts(long timestamp) {
+        return (ingestAfter == null || timestamp >= ingestAfter.getTime())
+                && (ingestBefore == null || timestamp < ingestBefore.getTime());
+    }
+
     @Override
     public String toString() {
         return "Server{" +
                 "id=" + id +
                 ", url='" + url + '\'' +
                 ", nickname='" + nickname + '\'' +
+                ", pageSize=" + pageSize +
+                ", weight=" + weight +
+                ", newestFirst=" + newestFirst +
+                ", follow=" + follow +
+                ", treeSize=" + treeSize +
+                ", lastPoll=" + lastPoll +
+                ", ingestAfter=" + ingestAfter +
+                ", ingestBefore=" + ingestBefore +
+                ", sampled=" + sampled +
+                ", sampleRate=" + sampleRate +
                 '}';
     }
 }
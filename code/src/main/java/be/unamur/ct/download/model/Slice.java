@@ -11,6 +11,8 @@ import javax.persistence.*;
  * Entity class used to represent a slice of a log server in the application.
  * A slice of a server is a range of certificates on the server.
  * Slices are used to split the downloading process among several threads.
+ * Slices are downloaded from their start, or from their end for the servers downloaded newest first: next is then the
+ * index following the last entry left, so that the part left to download is always a single range.
  * This class is used by JPA to create the corresponding SQL table in the database.
  * The class contains variables needed to represent a slice and basic getters, setters and toString methods
  */
@@ -24,6 +26,12 @@ public class Slice {
     private long endSlice;
     private long next;
 
+    // Number of failed attempts for a slice retrying a range that could not be downloaded, null for planned slices
+    private Integer attempts;
+
+    // Slice downloaded from its end to its start, false when null
+    private Boolean descending;
+
     @JsonIgnore
     @ManyToOne(fetch = FetchType.EAGER, optional = false)
     @JoinColumn(name = "server_id", nullable = false)
@@ -78,6 +86,50 @@ public class Slice {
         this.next = next;
     }
 
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public boolean isRetry() {
+        return attempts != null && attempts > 0;
+    }
+
+    public boolean isDescending() {
+        return descending != null && descending;
+    }
+
+    public void setDescending(Boolean descending) {
+        this.descending = descending;
+    }
+
+    /**
+     * Returns the index of the first entry left to download in the slice
+     *
+     * @author Jules Dejaeghere
+     * @return Index of the first entry left
+     */
+    public long getFirstLeft() {
+        return isDescending() ? startSlice : next;
+    }
+
+    /**
+     * Returns the index of the last entry left to download in the slice
+     *
+     * @author Jules Dejaeghere
+     * @return Index of the last entry left, lower than the first one if nothing is left
+     */
+    public long getLastLeft() {
+        return isDescending() ? next - 1 : endSlice;
+    }
+
+    public boolean isDone() {
+        return getFirstLeft() > getLastLeft();
+    }
+
     public Server getServer() {
         return server;
     }
@@ -94,6 +146,8 @@ public class Slice {
                 ", startSlice=" + startSlice +
                 ", endSlice=" + endSlice +
                 ", next=" + next +
+                ", attempts=" + attempts +
+                ", descending=" + descending +
                 ", serverId=" + server.getId() +
                 '}';
     }
@@ -0,0 +1,212 @@
+package be.unamur.ct.download.service;
+
+import be.unamur.ct.data.dao.ServerDao;
+import be.unamur.ct.data.dao.SliceDao;
+import be.unamur.ct.download.model.PollInterval;
+import be.unamur.ct.download.model.Server;
+import be.unamur.ct.download.model.Slice;
+import be.unamur.ct.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Service class following the head of Certificate Transparency log servers.
+ * A followed server is polled with get-sth and the entries added since the last poll are downloaded right away, as a
+ * single slice extended at every poll, without planning the slices of the whole log again.
+ * The delay between two polls adapts to the growth rate of the log: it is chosen so that about follow-target-entries
+ * new entries are found at each poll, and grows while the log does not grow.  It is kept in a PollInterval.
+ * Tree sizes, poll times and delays are saved on the server so that following resumes where it stopped on restart.
+ *
+ * @see Server
+ */
+@Service
+public class FollowService {
+
+    @Autowired
+    private ServerDao serverDao;
+    @Autowired
+    private SliceDao sliceDao;
+    @Autowired
+    private ServerService serverService;
+    @Autowired
+    private ThreadPool threadPool;
+
+    @Value("${follow-min-interval-ms}")
+    private long minInterval;
+
+    @Value("${follow-max-interval-ms}")
+    private long maxInterval;
+
+    @Value("${follow-target-entries}")
+    private long targetEntries;
+
+    private final ConcurrentMap<Long, Tail> tails = new ConcurrentHashMap<>();
+    private Logger logger = LoggerFactory.getLogger(FollowService.class);
+
+
+    public FollowService() {}
+
+
+    /**
+     * Resumes following the servers that were followed when the application stopped
+     *
+     * @author Jules Dejaeghere
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resume() {
+        for (Server server : serverDao.findByFollowTrue()) {
+            logger.info("Resuming follow of " + server.getNickname());
+            schedule(server);
+        }
+    }
+
+
+    /**
+     * Starts following the given server.
+     * The first time a server is followed, only the entries logged from now on are downloaded, unless slices were
+     * already planned for the server: following then starts right after the last planned slice.
+     * The state of the server is saved so that it is followed again when the application restarts.
+     *
+     * @author Jules Dejaeghere
+     * @param server Server to follow
+     */
+    public void follow(Server server) {
+        serverDao.updateFollow(server.getId(), true);
+        schedule(serverDao.findById(server.getId()));
+    }
+
+
+    /**
+     * Stops following the given server.  A download in progress for the server is completed.
+     *
+     * @author Jules Dejaeghere
+     * @param server Server to stop following
+     */
+    public void unfollow(Server server) {
+        serverDao.updateFollow(server.getId(), false);
+
+        Tail tail = tails.remove(server.getId());
+        if (tail != null) {
+            tail.future.cancel(false);
+            logger.info("Stopped following " + server.getNickname());
+        }
+    }
+
+
+    /**
+     * Tells whether the given server is currently polled
+     *
+     * @author Jules Dejaeghere
+     * @param server Server to check
+     * @return true if the server is followed, false otherwise
+     */
+    public boolean isFollowed(Server server) {
+        return tails.containsKey(server.getId());
+    }
+
+
+    private void schedule(Server server) {
+        Tail tail = new Tail(server, new PollInterval(minInterval, maxInterval, targetEntries,
+                server.getPollInterval(), server.getLastPoll()));
+
+        if (tails.putIfAbsent(server.getId(), tail) == null) {
+            tail.future = threadPool.getFollowExecutor().schedule(() -> poll(tail), 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     * Polls the tree size of a followed server, downloads the new entries and schedules the next poll.
+     * Polls of the same server never overlap: the next poll is only scheduled once the new entries are downloaded.
+     *
+     * @author Jules Dejaeghere
+     * @param tail State of the followed server
+     */
+    void poll(Tail tail) {
+        if (tails.get(tail.server.getId()) != tail) {
+            return;
+        }
+
+        try {
+            Server server = serverDao.findById(tail.server.getId());
+            long size = serverService.checkSize(server);
+            Date now = new Date();
+
+            // The first time a server is followed, start after the last planned slice, or from the current size
+            long known = server.getTreeSize() != null ? server.getTreeSize() : 0;
+            if (server.getTreeSize() == null) {
+                long planned = plannedSize(server, size);
+                if (planned > 0 && serverDao.claimTreeSize(server.getId(), 0, planned, now) == 1) {
+                    known = planned;
+                }
+            }
+
+            if (known > 0 && size > known && serverDao.claimTreeSize(server.getId(), known, size, now) == 1) {
+                tail.interval.adapt(size - known, now);
+                download(tail, server, known, size - 1);
+            } else {
+                // Either the log did not grow, or its new entries were planned by a scan of the whole log
+                tail.interval.adapt(0, now);
+            }
+
+            serverDao.updatePoll(server.getId(), now, tail.interval.getInterval());
+        } catch (RuntimeException e) {
+            logger.error("Cannot poll " + tail.server.getNickname() + ": " + e.getMessage());
+        }
+
+        if (tails.get(tail.server.getId()) == tail && !Thread.currentThread().isInterrupted()) {
+            tail.future = threadPool.getFollowExecutor()
+                    .schedule(() -> poll(tail), tail.interval.getInterval(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    private long plannedSize(Server server, long size) {
+        List<Slice> slices = sliceDao.findByServerOrderByEndSliceDesc(server);
+        return slices.isEmpty() ? size : slices.get(0).getEndSlice() + 1;
+    }
+
+
+    private void download(Tail tail, Server server, long start, long end) {
+        // Extend the slice of the previous poll when it ends right before the new entries, create a new one otherwise
+        if (tail.slice != null && tail.slice.getNext() == start && tail.slice.getEndSlice() == start - 1) {
+            tail.slice.setEndSlice(end);
+            tail.slice = sliceDao.save(tail.slice);
+        } else {
+            tail.slice = sliceDao.save(new Slice(start, end, start, server));
+        }
+
+        logger.info("Following " + server.getNickname() + ": " + (end - start + 1) + " new entries, next poll in "
+                + tail.interval.getInterval() + " ms");
+        serverService.searchSlice(tail.slice);
+    }
+
+
+    /**
+     * Class used to represent the state of a followed server between two polls
+     */
+    static class Tail {
+        final Server server;
+        volatile ScheduledFuture<?> future;
+        final PollInterval interval;
+        Slice slice;
+
+        Tail(Server server, PollInterval interval) {
+            this.server = server;
+            this.interval = interval;
+        }
+    }
+}
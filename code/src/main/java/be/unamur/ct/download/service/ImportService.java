@@ -0,0 +1,212 @@
+package be.unamur.ct.download.service;
+
+import be.unamur.ct.decode.service.DecodeService;
+import be.unamur.ct.decode.thread.DecodeBatchTask;
+import be.unamur.ct.download.client.EntriesParser;
+import be.unamur.ct.download.model.ImportJob;
+import be.unamur.ct.download.model.LogEntry;
+import be.unamur.ct.download.thread.ImportFileThread;
+import be.unamur.ct.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+
+/**
+ * Service class importing get-entries responses saved on disk, without reaching the log servers.
+ * Dump files are JSON get-entries responses, optionally gzip'd, holding one or several responses one after the other.
+ * The index of the first entry of a file is read from the end of its name, which must end with the index followed by
+ * .json or .json.gz, or with the requested range, such as entries-1000-1999.json.gz, so that files named after the
+ * requested range keep the index of their entries.  The index must not be glued to letters, like log2-5000.json whose
+ * index is 5000.  Files named otherwise are imported from index 0.
+ * Files are read in parallel by the importExecutor and their entries are queued to the decodeExecutor, whose bounded
+ * queue paces the readers to the speed of the decoder.
+ *
+ * @see ImportJob
+ */
+@Service
+public class ImportService {
+
+    // <start>.json or <start>-<end>.json at the end of the name, optionally gzip'd, the start being a whole word of the
+    // name: 1000 in log2019-entries-1000-1999.json, 5000 in log2-5000.json
+    private static final Pattern START =
+            Pattern.compile("(?:^|[^0-9A-Za-z])(\\d{1,18})(?:-\\d{1,18})?\\.json(?:\\.gz)?$");
+    private static final EntriesParser parser = new EntriesParser();
+
+    @Autowired
+    private DecodeService decodeService;
+    @Autowired
+    private ThreadPool threadPool;
+
+    private final List<ImportJob> jobs = new CopyOnWriteArrayList<>();
+    private Logger logger = LoggerFactory.getLogger(ImportService.class);
+
+
+    public ImportService() {}
+
+
+    /**
+     * Imports the dump files found in a directory and its sub-directories, or a single dump file
+     *
+     * @author Jules Dejaeghere
+     * @param path Directory or file to import
+     * @return The import job, to follow its progress
+     * @throws IOException if the path cannot be listed
+     */
+    public ImportJob importPath(String path) throws IOException {
+        List<File> files = listDumps(new File(path));
+
+        ImportJob job = new ImportJob(path, files.size());
+        jobs.add(job);
+        logger.info("Importing " + files.size() + " files from " + path);
+
+        for (File file : files) {
+            threadPool.getImportExecutor().execute(new ImportFileThread(file, job, this));
+        }
+        return job;
+    }
+
+
+    /**
+     * Lists the dump files to import, in the order of their names
+     *
+     * @author Jules Dejaeghere
+     * @param root Directory or file to import
+     * @return List of the .json and .json.gz files found
+     * @throws IOException if the directory cannot be listed
+     */
+    static List<File> listDumps(File root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root.toPath())) {
+            return paths.filter(Files::isRegularFile)
+                    .map(Path::toFile)
+                    .filter(f -> f.getName().endsWith(".json") || f.getName().endsWith(".json.gz"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+
+    /**
+     * Reads a dump file and queues its entries to the decodeExecutor, by batches of decode-batch-size entries.
+     * Entries read before an error are decoded, the file is counted as failed.
+     *
+     * @author Jules Dejaeghere
+     * @param file Dump file to import
+     * @param job  Import the file is part of
+     */
+    public void importFile(File file, ImportJob job) {
+        boolean failed = false;
+        Batches batches = new Batches(ThreadPool.getDecodeBatchSize());
+
+        long start = startIndex(file);
+        if (start < 0) {
+            logger.warn("No start index in the name of " + file + ", its entries are imported from index 0");
+            start = 0;
+        }
+
+        try (InputStream in = open(file)) {
+            parser.parseAll(in, start, batches);
+        } catch (IOException e) {
+            logger.error("Cannot import " + file + " after " + batches.count + " entries: " + e.getMessage());
+            failed = true;
+        }
+        batches.flush();
+
+        job.fileDone(batches.count, failed);
+        if (job.isDone()) {
+            logger.info("Import done: " + job);
+        } else {
+            logger.debug("Imported " + file + ": " + job);
+        }
+    }
+
+
+    /**
+     * Class used to group the entries read from a dump file into batches queued to the decodeExecutor
+     */
+    private class Batches implements Consumer<LogEntry> {
+
+        private final int batchSize;
+        private List<LogEntry> batch;
+        private long count;
+
+
+        private Batches(int batchSize) {
+            this.batchSize = batchSize;
+            this.batch = new ArrayList<>(batchSize);
+        }
+
+
+        /**
+         * Adds an entry to the current batch, queued once full
+         *
+         * @author Jules Dejaeghere
+         * @param entry Entry read from the file
+         */
+        @Override
+        public void accept(LogEntry entry) {
+            batch.add(entry);
+            count++;
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+
+        /**
+         * Queues the entries of the current batch, if any, and starts a new batch
+         *
+         * @author Jules Dejaeghere
+         */
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            threadPool.getDecodeExecutor().execute(new DecodeBatchTask(batch, decodeService));
+            batch = new ArrayList<>(batchSize);
+        }
+    }
+
+
+    private static InputStream open(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        return file.getName().endsWith(".gz") ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+
+
+    /**
+     * Returns the index of the first entry of a dump file, taken from its name
+     *
+     * @author Jules Dejaeghere
+     * @param file Dump file
+     * @return The number before the extension, or the first number of the range before it, -1 if the name ends
+     * with neither
+     */
+    public static long startIndex(File file) {
+        Matcher matcher = START.matcher(file.getName());
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+
+    public List<ImportJob> getJobs() {
+        return jobs;
+    }
+}
@@ -0,0 +1,98 @@
+package be.unamur.ct.download.service;
+
+import be.unamur.ct.download.client.LogClient;
+import be.unamur.ct.download.client.RateLimiter;
+import be.unamur.ct.download.model.Server;
+import okhttp3.OkHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Service class managing the HTTP clients used to reach Certificate Transparency log servers.
+ * A single LogClient is created for each log server and shared by all the threads downloading from it.
+ *
+ * @see LogClient
+ */
+@Service
+public class LogClientService {
+
+    @Value("${http-max-requests-per-log}")
+    private int maxRequestsPerLog;
+
+    @Value("${http-keep-alive-seconds}")
+    private long keepAliveSeconds;
+
+    @Value("${http-min-requests-per-second}")
+    private double minRate;
+
+    @Value("${http-max-requests-per-second}")
+    private double maxRate;
+
+    @Value("${http-backoff-base-ms}")
+    private long baseBackoff;
+
+    @Value("${http-backoff-max-ms}")
+    private long maxBackoff;
+
+    private final OkHttpClient base = new OkHttpClient();
+    private final ConcurrentMap<String, LogClient> clients = new ConcurrentHashMap<>();
+    private Logger logger = LoggerFactory.getLogger(LogClientService.class);
+
+
+    public LogClientService() {}
+
+
+    /**
+     * Returns the client to use for the given server, creating it on first use
+     *
+     * @author Jules Dejaeghere
+     * @param server Server to get the client for
+     * @return The client shared by all the requests sent to the server
+     */
+    public LogClient getClient(Server server) {
+        return clients.computeIfAbsent(server.getUrl(), url -> {
+            logger.info("Creating HTTP client for " + url + " (" + maxRequestsPerLog + " concurrent requests)");
+            RateLimiter limiter = new RateLimiter(minRate, maxRate, baseBackoff, maxBackoff);
+            LogClient client = new LogClient(url, base, maxRequestsPerLog, keepAliveSeconds, limiter);
+            if (server.getPageSize() != null) {
+                client.learnPageSize(server.getPageSize());
+            }
+            return client;
+        });
+    }
+
+
+    /**
+     * Returns all the clients created so far, to display their statistics
+     *
+     * @author Jules Dejaeghere
+     * @return Collection of the clients currently in use
+     */
+    public Collection<LogClient> getClients() {
+        return new ArrayList<>(clients.values());
+    }
+
+
+    /**
+     * Closes every client when the application stops
+     *
+     * @author Jules Dejaeghere
+     */
+    @PreDestroy
+    public void close() {
+        for (LogClient client : clients.values()) {
+            logger.info(client.toString());
+            client.close();
+        }
+        clients.clear();
+    }
+}
@@ -0,0 +1,206 @@
+package be.unamur.ct.download.service;
+
+import be.unamur.ct.data.dao.LogRangesDao;
+import be.unamur.ct.data.dao.ServerDao;
+import be.unamur.ct.data.dao.SliceDao;
+import be.unamur.ct.download.model.LogRanges;
+import be.unamur.ct.download.model.RangeSet;
+import be.unamur.ct.download.model.Server;
+import be.unamur.ct.download.model.Slice;
+import be.unamur.ct.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Service class keeping track of the entries downloaded from each log server, whatever the order in which they were
+ * downloaded.  Every page received is added to the RangeSet of its server as soon as it is handed to the decoder,
+ * and the sets that changed are saved periodically, every checkpoint-interval-ms, and when the application stops.
+ * The holes of a set below the tree size planned for its server, not covered by a slice left to download, are
+ * entries that were lost, for instance given up after too many failed attempts: they are the gaps to download again.
+ * The set of a server downloaded before ranges were tracked is built from its slices the first time it is needed.
+ *
+ * @see RangeSet
+ * @see LogRanges
+ */
+@Service
+public class RangeService {
+
+    @Autowired
+    private LogRangesDao logRangesDao;
+    @Autowired
+    private SliceDao sliceDao;
+    @Autowired
+    private ServerDao serverDao;
+    @Autowired
+    private ThreadPool threadPool;
+
+    @Value("${checkpoint-interval-ms}")
+    private long interval;
+
+    private final ConcurrentMap<Long, RangeSet> sets = new ConcurrentHashMap<>();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private Logger logger = LoggerFactory.getLogger(RangeService.class);
+
+
+    public RangeService() {}
+
+
+    /**
+     * Starts saving the sets that changed periodically
+     *
+     * @author Jules Dejaeghere
+     */
+    @PostConstruct
+    public void start() {
+        threadPool.getCheckpointExecutor()
+                .scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Returns the set of the entries downloaded from a server, loading it from the database the first time
+     *
+     * @author Jules Dejaeghere
+     * @param server Server to get the set for
+     * @return The set of the server
+     */
+    public RangeSet get(Server server) {
+        return sets.computeIfAbsent(server.getId(), id -> load(server));
+    }
+
+
+    private RangeSet load(Server server) {
+        LogRanges stored = logRangesDao.findByServerId(server.getId());
+        if (stored != null) {
+            return RangeSet.fromBytes(stored.getRanges());
+        }
+
+        // Every entry planned in a slice and not left to download in it was downloaded by the previous versions
+        List<Slice> slices = sliceDao.findByServerOrderByStartSlice(server);
+        RangeSet left = new RangeSet();
+        long end = -1;
+        for (Slice s : slices) {
+            left.add(s.getFirstLeft(), s.getLastLeft());
+            end = Math.max(end, s.getEndSlice());
+        }
+        RangeSet set = complement(left, 0, end);
+
+        if (set.getCount() > 0) {
+            logger.info("Ranges of " + server.getNickname() + " built from its slices: " + set.getCount() + " entries");
+            dirty.add(server.getId());
+        }
+        return set;
+    }
+
+
+    private static RangeSet complement(RangeSet set, long from, long to) {
+        RangeSet complement = new RangeSet();
+        for (long[] gap : set.gaps(from, to)) {
+            complement.add(gap[0], gap[1]);
+        }
+        return complement;
+    }
+
+
+    /**
+     * Records that the entries from start to end, both inclusive, have been downloaded from a server
+     *
+     * @author Jules Dejaeghere
+     * @param server Server the entries belong to
+     * @param start  Index of the first entry
+     * @param end    Index of the last entry
+     */
+    public void complete(Server server, long start, long end) {
+        if (get(server).add(start, end)) {
+            dirty.add(server.getId());
+        }
+    }
+
+
+    /**
+     * Returns the entries of a server that are missing: not downloaded, not left to download in one of its slices,
+     * below the tree size already planned for the server and between the given indices
+     *
+     * @author Jules Dejaeghere
+     * @param server Server to look for gaps
+     * @param from   Index of the first entry to check
+     * @param to     Index following the last entry to check
+     * @return List of the missing ranges, as the indices of their first and last entries, in increasing order
+     */
+    public List<long[]> gaps(Server server, long from, long to) {
+        Server stored = serverDao.findById(server.getId());
+        List<Slice> slices = sliceDao.findByServerOrderByStartSlice(server);
+
+        long end = stored == null || stored.getTreeSize() == null ? -1 : stored.getTreeSize() - 1;
+        for (Slice s : slices) {
+            end = Math.max(end, s.getEndSlice());
+        }
+
+        RangeSet known = RangeSet.fromBytes(get(server).toBytes());
+        for (Slice s : slices) {
+            known.add(s.getFirstLeft(), s.getLastLeft());
+        }
+        return known.gaps(from, Math.min(end, to - 1));
+    }
+
+
+    /**
+     * Saves the sets that changed since the last flush.
+     * If a set cannot be saved, it is saved again at the next flush.
+     *
+     * @author Jules Dejaeghere
+     */
+    public void flush() {
+        List<Long> batch = new ArrayList<>(dirty);
+        for (Long id : batch) {
+            dirty.remove(id);
+            RangeSet set = sets.get(id);
+
+            try {
+                LogRanges stored = logRangesDao.findByServerId(id);
+                if (stored == null) {
+                    Server server = serverDao.findById(id.longValue());
+                    if (server == null) {
+                        sets.remove(id);
+                        continue;
+                    }
+                    stored = new LogRanges(server);
+                }
+                stored.setRanges(set.toBytes());
+                stored.setEntries(set.getCount());
+                stored.setRangeCount(set.getSize());
+                stored.setUpdated(new Date());
+                logRangesDao.save(stored);
+            } catch (RuntimeException e) {
+                logger.error("Cannot save ranges of server " + id + ": " + e.getMessage());
+                dirty.add(id);
+            }
+        }
+    }
+
+
+    /**
+     * Saves the sets that changed before the application stops
+     *
+     * @author Jules Dejaeghere
+     */
+    @PreDestroy
+    public void stop() {
+        flush();
+        logger.info("Downloaded ranges saved");
+    }
+}
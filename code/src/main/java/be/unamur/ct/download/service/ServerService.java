@@ -2,30 +2,44 @@ package be.unamur.ct.download.service;
 
 import be.unamur.ct.data.dao.ServerDao;
 import be.unamur.ct.data.dao.SliceDao;
+import be.unamur.ct.data.service.CheckpointService;
 import be.unamur.ct.decode.service.DecodeService;
-import be.unamur.ct.decode.thread.DecodeEntryThread;
+import be.unamur.ct.decode.service.IssuerCache;
+import be.unamur.ct.decode.thread.DecodeBatchTask;
+import be.unamur.ct.download.client.EntriesPage;
+import be.unamur.ct.download.client.LogClient;
+import be.unamur.ct.download.model.ActiveSlice;
+import be.unamur.ct.download.model.DensityHistogram;
 import be.unamur.ct.download.model.LogEntry;
 import be.unamur.ct.download.model.LogList;
 import be.unamur.ct.download.model.Server;
 import be.unamur.ct.download.model.Slice;
 import be.unamur.ct.download.thread.SearchSliceThread;
+import be.unamur.ct.spool.service.SpoolService;
 import be.unamur.ct.thread.ThreadPool;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import okhttp3.Call;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
-import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 
 
 /**
@@ -42,9 +56,39 @@ public class ServerService {
     @Autowired
     private DecodeService decodeService;
     @Autowired
+    private IssuerCache issuerCache;
+    @Autowired
     private ThreadPool threadPool;
+    @Autowired
+    private LogClientService logClientService;
+    @Autowired
+    private SliceScheduler sliceScheduler;
+    @Autowired
+    private CheckpointService checkpointService;
+    @Autowired
+    private SpoolService spoolService;
+    @Autowired
+    private RangeService rangeService;
+
+    @Value("${entries-per-request}")
+    private long entriesPerRequest;
 
-    private ExecutorService decoder = threadPool.getDecodeExecutor();
+    @Value("${pipeline-depth}")
+    private int pipelineDepth;
+
+    @Value("${retry-max-attempts}")
+    private int maxAttempts;
+
+    @Value("${ingest-margin-ms}")
+    private long ingestMargin;
+
+    @Value("${sample-buckets}")
+    private int sampleBuckets;
+
+    @Value("${sample-pages-per-bucket}")
+    private int samplePages;
+
+    private ObjectMapper objectMapper = new ObjectMapper();
     private Logger logger = LoggerFactory.getLogger(ServerService.class);
 
 
@@ -54,19 +98,43 @@ public class ServerService {
     /**
      * Updates the slices for the specified server and start downloading logs using the created slices.
      * The slices are handled by different thread in order to reduce waiting time due to blocking calls in the process
+     * Slices of a server downloaded newest first are queued from the head of the log: the slices holding the entries
+     * added since the last start, or the newest slice, are downloaded before the slices of every other server, the
+     * older slices use the threads left.
+     * Slices of a sampled server downloaded oldest first are queued from the densest ranges of the log.
+     * The roots accepted by the log are added to the IssuerCache first, so that the chains of its entries are resolved
+     * without parsing their roots.
      *
      * @author Jules Dejaeghere
      * @param server Server to download logs from
      */
     public void startSearch(Server server) {
+        Server stored = serverDao.findById(server.getId());
+        long planned = stored == null || stored.getTreeSize() == null ? 0 : stored.getTreeSize();
+
+        loadRoots(server);
+
         logger.info("Updating slices for " + server.getNickname());
         updateSlices(server);
+        repairGaps(server);
 
         logger.info("Adding slices to queue");
-        Iterable<Slice> slices = sliceDao.findByServerOrderByStartSlice(server);
+        boolean newestFirst = server.isNewestFirst();
+        List<Slice> slices = newestFirst
+                ? sliceDao.findByServerOrderByEndSliceDesc(server)
+                : sliceDao.findByServerOrderByStartSlice(server);
+
+        DensityHistogram histogram = newestFirst ? null : server.getDensityHistogram();
+        if (histogram != null) {
+            slices.sort(Comparator.comparingDouble(
+                    (Slice s) -> -histogram.getDensity(s.getFirstLeft(), s.getLastLeft())));
+        }
+        boolean first = true;
         for (Slice s : slices) {
-            SearchSliceThread search = new SearchSliceThread(s, this);
-            threadPool.getSliceExecutor().execute(search);
+            if (!s.isDone()) {
+                queueSlice(s, newestFirst && (first || planned > 0 && s.getStartSlice() >= planned));
+                first = false;
+            }
         }
     }
 
@@ -74,6 +142,13 @@ public class ServerService {
     /**
      * Downloads logs from the specified slice.
      * Once downloaded each log is sent in a new to thread to be decoded and saved in the database.
+     * Up to pipeline-depth requests are kept in flight for the slice.  Responses may complete in any order, they are
+     * kept in a window until the range before them is complete so that the slice only advances over contiguous ranges.
+     * Log servers may return fewer entries than requested: the rest of the range is requested again and the largest
+     * number of entries returned at once is kept as the page size of the server.
+     * Ranges that cannot be downloaded are not lost: they are saved as new slices retried at a lower priority.
+     * Every page received is recorded in the downloaded ranges of the server, whatever its position in the slice.
+     * Descending slices are requested and checkpointed from their end to their start.
      *
      * @author Jules Dejaeghere
      * @param slice Slice to download logs from
@@ -81,59 +156,253 @@ public class ServerService {
      */
     public void searchSlice(Slice slice) {
         Server server = slice.getServer();
-        long start = slice.getNext();
-        long size = slice.getEndSlice();
-        long step = 1000;
-        boolean interrupted = false;
+        LogClient client = logClientService.getClient(server);
         logger.info("Starting slice " + slice.toString());
 
-        while (start <= size && !Thread.currentThread().isInterrupted()) {
+        BlockingQueue<EntriesPage> completed = new LinkedBlockingQueue<>();
+        Map<Call, Long> inFlight = new HashMap<>();
+        TreeMap<Long, Long> window = new TreeMap<>();
+        ActiveSlice active = sliceScheduler.register(slice);
 
-            long end = Math.min((start + step - 1), size);
+        try {
+            // The bounds of the slice may move while it is downloaded, if another thread takes part of it
+            while (!active.isDone() && !Thread.currentThread().isInterrupted()) {
+
+                // Keep the pipeline full, without letting the window of completed ranges grow beyond its depth
+                long step = client.getPageSize() > 0 ? client.getPageSize() : entriesPerRequest;
+                long[] range;
+                EntriesPage page;
+                try {
+                    while (inFlight.size() + window.size() < pipelineDepth && (range = active.reserve(step)) != null) {
+                        inFlight.put(client.getEntriesAsync(range[0], range[1], completed::add), range[0]);
+                    }
+
+                    page = completed.take();
+                } catch (InterruptedException | InterruptedIOException e) {
+                    Thread.currentThread().interrupt();
+                    logger.warn("Thread interrupted");
+                    break;
+                }
+                inFlight.values().remove(page.getStart());
+
+                // NEXT STEP - Send logs to be decoded
+                int received = page.getReceived();
+                try {
+                    handOver(server, page.getEntries(), received);
+                } catch (InterruptedIOException e) {
+                    // The page is downloaded again once the download restarts, from the last checkpoint of the slice
+                    Thread.currentThread().interrupt();
+                    logger.warn("Thread interrupted");
+                    break;
+                }
+                sliceScheduler.record(server, received);
+
+                long last;
+                if (page.isFailed() || received == 0) {
+                    logger.error("Error while requesting logs to server: "
+                            + (page.isFailed() ? page.getError() : "no entries received for " + page));
+                    retryRange(server, page.getStart(), page.getEnd(), slice.isRetry() ? slice.getAttempts() + 1 : 1);
+                    last = page.getEnd();
+                } else {
+                    last = page.getStart() + received - 1;
+                    rangeService.complete(server, page.getStart(), last);
+
+                    if (client.learnPageSize(received)) {
+                        logger.info("Page size of " + server.getNickname() + " is at least " + received + " entries");
+                        server.setPageSize(client.getPageSize());
+                        serverDao.updatePageSize(server.getId(), client.getPageSize());
+                    }
+
+                    // Request the rest of a truncated page right away
+                    if (last < page.getEnd()) {
+                        try {
+                            inFlight.put(client.getEntriesAsync(last + 1, page.getEnd(), completed::add), last + 1);
+                        } catch (InterruptedIOException e) {
+                            logger.warn("Thread interrupted");
+                            break;
+                        }
+                    }
+                }
 
-            // Create REST request
-            OkHttpClient client = new OkHttpClient();
-            Request request = new Request.Builder()
-                    .url(server.getUrl() + "ct/v1/get-entries?start=" + start + "&end=" + end)
-                    .build();
+                // Advance the slice over the contiguous completed ranges, from its end for a descending slice
+                long next = slice.getNext();
+                if (slice.isDescending()) {
+                    window.put(last, page.getStart());
+                    while (window.containsKey(next - 1)) {
+                        next = window.remove(next - 1);
+                    }
+                } else {
+                    window.put(page.getStart(), last);
+                    while (window.containsKey(next)) {
+                        next = window.remove(next) + 1;
+                    }
+                }
 
-            LogList log = null;
-            try {
-                // Execute request
-                Call call = client.newCall(request);
-                Response response = call.execute();
-
-                // Save received JSON in an Object using ObjectMapper
-                ObjectMapper objectMapper = new ObjectMapper();
-                log = objectMapper.readValue(response.body().string(), LogList.class);
-            } catch (SocketTimeoutException e) {
-                logger.warn("Timeout while requesting data from server");
-            } catch (InterruptedIOException e) {
-                interrupted = true;
-                Thread.currentThread().interrupt();
-                logger.warn("Thread interrupted");
-            } catch (IOException e) {
-                logger.error("Error while requesting logs to server");
+                if (next != slice.getNext()) {
+                    slice.setNext(next);
+                    checkpointService.checkpoint(slice);
+                }
             }
+        } finally {
+            // Do not leave requests running for an interrupted slice
+            for (Call call : inFlight.keySet()) {
+                call.cancel();
+            }
+            sliceScheduler.unregister(active);
+        }
+    }
 
-            // NEXT STEP - Send logs to be decoded
-            if (log != null) {
-                for (LogEntry entry : log) {
-                    decoder.execute(new DecodeEntryThread(entry, decodeService));
+
+    /**
+     * Hands downloaded entries over to the decoder.
+     * When the spool is enabled, entries are written to the spool and decoded later at the pace of the decoder,
+     * otherwise they are queued to the decodeExecutor by batches of decode-batch-size entries.  If the spool cannot be
+     * written, the entries not written to the spool are queued as well.
+     * Entries logged outside the ingest bounds of the server are dropped.
+     *
+     * @author Jules Dejaeghere
+     * @param server   Server the entries were downloaded from
+     * @param entries  List of downloaded entries
+     * @param received Number of entries of the list to hand over
+     * @throws InterruptedIOException if the thread is interrupted while waiting for the spool to be consumed
+     */
+    private void handOver(Server server, LogList entries, int received) throws InterruptedIOException {
+        if (server.isBounded()) {
+            LogList kept = new LogList();
+            for (int i = 0; i < received; i++) {
+                if (server.accepts(entries.get(i).getTimestamp())) {
+                    kept.addEntry(entries.get(i));
                 }
             }
-            if (!interrupted) {
-                slice.setNext(end + 1);
-                sliceDao.save(slice);
-                serverDao.save(server);
-                start += step;
+            entries = kept;
+            received = kept.size();
+        }
+
+        int spooled = 0;
+        if (spoolService.isEnabled()) {
+            spooled = spoolService.append(entries, received);
+            if (spooled == received) {
+                return;
+            }
+            logger.error("Decoding right away the " + (received - spooled) + " entries not written to the spool");
+        }
+
+        // The entries are decoded by batches, one task per chunk of the page
+        int batchSize = ThreadPool.getDecodeBatchSize();
+        for (int i = spooled; i < received; i += batchSize) {
+            List<LogEntry> batch = new ArrayList<>(Math.min(batchSize, received - i));
+            for (int j = i; j < i + batchSize && j < received; j++) {
+                batch.add(entries.get(j));
             }
+            threadPool.getDecodeExecutor().execute(new DecodeBatchTask(batch, decodeService));
         }
     }
 
 
+    /**
+     * Saves a range that could not be downloaded as a new slice and queues it to be downloaded again.
+     * Retried slices have a lower priority than planned slices.  A range failing more than retry-max-attempts times
+     * is given up.
+     *
+     * @author Jules Dejaeghere
+     * @param server   Server the range belongs to
+     * @param start    Index of the first entry of the range
+     * @param end      Index of the last entry of the range
+     * @param attempts Number of times the range failed
+     */
+    private void retryRange(Server server, long start, long end, int attempts) {
+        if (attempts > maxAttempts) {
+            logger.error("Giving up entries " + start + "-" + end + " of " + server.getNickname()
+                    + " after " + attempts + " failed attempts, they are left to the next gap repair");
+            return;
+        }
+
+        Slice retry = newSlice(server, start, end);
+        retry.setAttempts(attempts);
+        retry = sliceDao.save(retry);
+
+        try {
+            queueSlice(retry);
+        } catch (RejectedExecutionException e) {
+            logger.warn("Download stopped, " + retry + " will be retried on next start");
+        }
+    }
+
+
+    /**
+     * Returns a new slice of the given server, not saved, downloaded in the order chosen for the server
+     *
+     * @author Jules Dejaeghere
+     * @param server Server the slice belongs to
+     * @param start  Index of the first entry of the slice
+     * @param end    Index of the last entry of the slice
+     * @return The new slice
+     */
+    private static Slice newSlice(Server server, long start, long end) {
+        if (!server.isNewestFirst()) {
+            return new Slice(start, end, start, server);
+        }
+
+        Slice slice = new Slice(start, end, end + 1, server);
+        slice.setDescending(true);
+        return slice;
+    }
+
+
+    /**
+     * Queues a slice to be downloaded by the sliceExecutor, with its fair share tag
+     *
+     * @author Jules Dejaeghere
+     * @param slice Slice to download
+     * @see SliceScheduler
+     */
+    private void queueSlice(Slice slice) {
+        queueSlice(slice, false);
+    }
+
+
+    /**
+     * Queues a slice to be downloaded by the sliceExecutor, with its fair share tag
+     *
+     * @author Jules Dejaeghere
+     * @param slice Slice to download
+     * @param head  true if the slice holds the head of a log downloaded newest first, to download it first
+     * @see SliceScheduler
+     */
+    private void queueSlice(Slice slice, boolean head) {
+        SearchSliceThread search = new SearchSliceThread(slice, this, sliceScheduler.fairTag(slice), head);
+        threadPool.getSliceExecutor().execute(search);
+    }
+
+
+    /**
+     * Takes over half of the remaining part of the busiest slice being downloaded, when no other slice is waiting
+     *
+     * @author Jules Dejaeghere
+     * @return The slice to download next, null if there is nothing to take over
+     * @see SliceScheduler
+     */
+    public Slice stealSlice() {
+        return sliceScheduler.steal();
+    }
+
+
+    /**
+     * Records that a slice was taken from the queue of the sliceExecutor, to move the fair share virtual time
+     *
+     * @author Jules Dejaeghere
+     * @param search Thread about to download its slice
+     * @see SliceScheduler
+     */
+    public void startedSlice(SearchSliceThread search) {
+        sliceScheduler.started(search);
+    }
+
+
     /**
      * Creates or updates slices for the given server.  Once created, slices are stored in the database
+     * The progress of the slices waiting in the CheckpointService is saved first, so that the slices are planned from
+     * their actual progress.
      *
      * @author Jules Dejaeghere
      * @param server Server to create slices for
@@ -146,7 +415,8 @@ public class ServerService {
          */
         long start;
         long end;
-        long step = 1000000;
+
+        checkpointService.flush();
 
         // Define where to start to create slices
         List<Slice> slices = sliceDao.findByServerOrderByEndSliceDesc(server);
@@ -160,33 +430,272 @@ public class ServerService {
             logger.info("Already slices to " + start);
         }
 
-        // Clear all completely used slices
-        int count = 0;
-        for (Slice s : slices) {
-            if (s.getNext() > s.getEndSlice()) {
-                sliceDao.deleteById(s.getId());
-                count++;
-            }
+        // Clear all completely used slices, except the last one to know where we previously stopped
+        if (last != null) {
+            int count = checkpointService.deleteCompleted(server, last.getId());
+            logger.info(count + " slices deleted");
+        }
+
+        long serverSize = checkSize(server);
+
+        // Indices of the entries logged within the ingest bounds of the server
+        long[] window;
+        try {
+            window = ingestWindow(server, serverSize);
+        } catch (IOException e) {
+            logger.error("Cannot find the entries of " + server.getNickname()
+                    + " within its ingest bounds, retry later: " + e.getMessage());
+            return;
         }
-        logger.info(count + " slices deleted");
 
-        // Re-insert last Slice to know where we previously stopped
-        if (last != null && !sliceDao.existsById(last.getId())) {
-            sliceDao.save(last);
-            logger.info("Re-saving last slice");
+        // Entries past the tree size of the server may already have been planned by the tail-follow mode
+        Server stored = serverDao.findById(server.getId());
+        long planned = stored == null || stored.getTreeSize() == null ? 0 : stored.getTreeSize();
+        start = Math.max(start, planned);
+        if (serverSize > start && serverDao.claimTreeSize(server.getId(), planned, serverSize, new Date()) == 0) {
+            logger.warn("Tree size of " + server.getNickname() + " changed while planning slices, retry later");
+            return;
         }
 
-        long serverSize = checkSize(server);
+        long stop = Math.min(serverSize, window[1]);
+        if (window[0] > start || stop < serverSize) {
+            logger.info("Skipping entries of " + server.getNickname() + " outside of " + window[0] + "-" + (stop - 1));
+            start = Math.max(start, window[0]);
+        }
+
+        long step = sliceScheduler.planSliceSize(stop - start);
+        logger.info("Creating slices of " + step + " entries up to " + stop);
 
-        while (start < serverSize) {
-            end = Math.min(start + step - 1, serverSize - 1);
-            sliceDao.save(new Slice(start, end, start, server));
+        while (start < stop) {
+            end = Math.min(start + step - 1, stop - 1);
+            sliceDao.save(newSlice(server, start, end));
             start += step;
         }
 
     }
 
 
+    /**
+     * Creates slices for the entries of the given server that are missing from its downloaded ranges.
+     * Missing entries are split in slices like a new log would be.  Slices are stored in the database, not queued.
+     *
+     * @author Jules Dejaeghere
+     * @param server Server to repair
+     * @return List of the created slices
+     * @see RangeService
+     */
+    public List<Slice> repairGaps(Server server) {
+        List<Slice> created = new ArrayList<>();
+        Server stored = serverDao.findById(server.getId());
+        long treeSize = stored == null || stored.getTreeSize() == null ? 0 : stored.getTreeSize();
+
+        long[] window;
+        try {
+            window = ingestWindow(server, treeSize);
+        } catch (IOException e) {
+            logger.error("Cannot find the entries of " + server.getNickname()
+                    + " within its ingest bounds, no repair: " + e.getMessage());
+            return created;
+        }
+
+        List<long[]> gaps = rangeService.gaps(server, window[0], window[1]);
+        if (gaps.isEmpty()) {
+            return created;
+        }
+
+        long missing = 0;
+        for (long[] gap : gaps) {
+            missing += gap[1] - gap[0] + 1;
+        }
+        logger.warn(missing + " entries of " + server.getNickname() + " missing in " + gaps.size() + " gaps");
+
+        long step = sliceScheduler.planSliceSize(missing);
+        for (long[] gap : gaps) {
+            for (long start = gap[0]; start <= gap[1]; start += step) {
+                long end = Math.min(start + step - 1, gap[1]);
+                created.add(sliceDao.save(newSlice(server, start, end)));
+            }
+        }
+        return created;
+    }
+
+
+    /**
+     * Downloads again the entries of the given server that are missing from its downloaded ranges
+     *
+     * @author Jules Dejaeghere
+     * @param server Server to repair
+     */
+    public void repair(Server server) {
+        for (Slice slice : repairGaps(server)) {
+            queueSlice(slice);
+        }
+    }
+
+
+    /**
+     * Samples the entries of a server to estimate where the certificates of the wanted domains are in the log.
+     * The log is split into sample-buckets buckets of the same size, and sample-pages-per-bucket pages are downloaded
+     * at random positions within each bucket.  The sampled entries go through the domain filter of the decoder, they
+     * are neither decoded further nor saved.  The density histogram and the pace of the sample are saved on the server.
+     *
+     * @author Jules Dejaeghere
+     * @param server Server to sample
+     * @return The density histogram of the server, null if the log cannot be reached
+     * @see DensityHistogram
+     */
+    public DensityHistogram sample(Server server) {
+        long treeSize = checkSize(server);
+        if (treeSize <= 0) {
+            logger.error("Cannot get the size of " + server.getNickname() + ", no sample");
+            return null;
+        }
+
+        LogClient client = logClientService.getClient(server);
+        long step = client.getPageSize() > 0 ? client.getPageSize() : entriesPerRequest;
+        DensityHistogram histogram = new DensityHistogram(treeSize, sampleBuckets);
+
+        // Stratified sample: pages at random positions within each bucket, never across two buckets
+        Random random = new Random();
+        List<long[]> pages = new ArrayList<>();
+        for (int b = 0; b < histogram.getBuckets(); b++) {
+            long from = histogram.startOf(b);
+            long to = histogram.startOf(b + 1) - 1;
+            for (int p = 0; p < samplePages && from <= to; p++) {
+                long start = from + (long) (random.nextDouble() * Math.max(1, to - from + 2 - step));
+                pages.add(new long[]{start, Math.min(start + step - 1, to)});
+            }
+        }
+
+        logger.info("Sampling " + pages.size() + " pages of " + server.getNickname());
+        long begin = System.currentTimeMillis();
+        BlockingQueue<EntriesPage> completed = new LinkedBlockingQueue<>();
+        List<Call> calls = new ArrayList<>();
+        int next = 0;
+        int failed = 0;
+
+        try {
+            for (int done = 0; done < pages.size(); done++) {
+                while (calls.size() - done < pipelineDepth && next < pages.size()) {
+                    long[] page = pages.get(next++);
+                    calls.add(client.getEntriesAsync(page[0], page[1], completed::add));
+                }
+
+                EntriesPage page = completed.take();
+                if (page.isFailed()) {
+                    failed++;
+                    continue;
+                }
+
+                long matches = 0;
+                for (int i = 0; i < page.getReceived(); i++) {
+                    if (decodeService.isWanted(page.getEntries().get(i))) {
+                        matches++;
+                    }
+                }
+                histogram.record(histogram.bucketOf(page.getStart()), page.getReceived(), matches);
+            }
+        } catch (InterruptedException | InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Sample of " + server.getNickname() + " interrupted");
+            for (Call call : calls) {
+                call.cancel();
+            }
+            return null;
+        }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - begin);
+        long rate = histogram.getSampled() * 1000 / elapsed;
+        server.setDensity(histogram.encode());
+        server.setSampled(new Date());
+        server.setSampleRate(rate);
+        serverDao.updateDensity(server.getId(), server.getDensity(), server.getSampled(), rate);
+
+        logger.info("Sample of " + server.getNickname() + ": " + histogram + ", " + failed + " pages failed, "
+                + rate + " entries/s, full download in about " + (rate > 0 ? treeSize / rate / 60 : "?") + " minutes");
+        return histogram;
+    }
+
+
+    /**
+     * Returns the indices of the entries of a server logged within its ingest bounds.
+     * Timestamps only roughly increase with the index, logs may add entries up to their maximum merge delay after
+     * their timestamp: the bounds are widened by ingest-margin-ms, the entries outside of the bounds are dropped when
+     * they are downloaded.
+     *
+     * @author Jules Dejaeghere
+     * @param server   Server to download logs from
+     * @param treeSize Number of entries in the log
+     * @return The index of the first entry to download and the index following the last one
+     * @throws IOException if an entry of the log cannot be downloaded
+     */
+    public long[] ingestWindow(Server server, long treeSize) throws IOException {
+        long from = 0;
+        long to = treeSize;
+
+        if (server.getIngestAfter() != null) {
+            from = findIndex(server, treeSize, server.getIngestAfter().getTime() - ingestMargin);
+        }
+        if (server.getIngestBefore() != null) {
+            to = findIndex(server, treeSize, server.getIngestBefore().getTime() + ingestMargin);
+        }
+
+        return new long[]{from, to};
+    }
+
+
+    /**
+     * Binary searches the log for the first entry logged at or after the given time, downloading single entries
+     *
+     * @author Jules Dejaeghere
+     * @param server    Server to search
+     * @param treeSize  Number of entries in the log
+     * @param timestamp Time to search for, in milliseconds since the epoch
+     * @return Index of the first entry whose timestamp is not before the given time, treeSize if there is none
+     * @throws IOException if an entry cannot be downloaded after retry-max-attempts attempts
+     */
+    public long findIndex(Server server, long treeSize, long timestamp) throws IOException {
+        LogClient client = logClientService.getClient(server);
+        long low = 0;
+        long high = treeSize;
+        int probes = 0;
+
+        while (low < high) {
+            long middle = low + (high - low) / 2;
+            probes++;
+
+            if (probeTimestamp(client, middle) < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        logger.info("First entry of " + server.getNickname() + " logged from " + new Date(timestamp) + ": " + low
+                + " (" + probes + " probes)");
+        return low;
+    }
+
+
+    private long probeTimestamp(LogClient client, long index) throws IOException {
+        IOException error = null;
+        for (int attempt = 0; attempt < Math.max(1, maxAttempts); attempt++) {
+            try {
+                LogList entries = client.getEntries(index, index);
+                if (entries.size() > 0) {
+                    return entries.getFirst().getTimestamp();
+                }
+                error = new IOException("No entry returned for index " + index);
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        throw error;
+    }
+
+
     /**
      * Returns the size (the number of logs it contains) of a Certificate Transparency log server
      *
@@ -196,25 +705,45 @@ public class ServerService {
      */
     public long checkSize(Server server) {
 
-        // Create REST request
-        OkHttpClient client = new OkHttpClient();
+        try {
+            // Execute request on the client shared by all requests to the server and read the received JSON
+            JsonNode jsonNode = logClientService.getClient(server).get("ct/v1/get-sth",
+                    response -> objectMapper.readTree(response.body().byteStream()));
+
+            return jsonNode.get("tree_size").asLong();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
 
-        Request request = new Request.Builder()
-                .url(server.getUrl() + "ct/v1/get-sth")
-                .build();
 
-        // Execute request
-        Call call = client.newCall(request);
+    /**
+     * Adds the roots accepted by a Certificate Transparency log server to the IssuerCache
+     *
+     * @author Jules Dejaeghere
+     * @param server Server to get the roots from
+     * @return Number of roots added to the cache, 0 if they cannot be downloaded
+     */
+    public int loadRoots(Server server) {
         try {
-            Response response = call.execute();
-            String json = response.body().string();
+            JsonNode jsonNode = logClientService.getClient(server).get("ct/v1/get-roots", response -> {
+                if (!response.isSuccessful()) {
+                    throw new IOException("HTTP " + response.code() + " for get-roots");
+                }
+                return objectMapper.readTree(response.body().byteStream());
+            });
 
-            // Save received JSON in an Object using ObjectMapper
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode jsonNode = objectMapper.readTree(json);
+            List<byte[]> roots = new ArrayList<>();
+            for (JsonNode root : jsonNode.path("certificates")) {
+                roots.add(Base64.getDecoder().decode(root.asText()));
+            }
 
-            return jsonNode.get("tree_size").asLong();
-        } catch (IOException e) {
+            int added = issuerCache.warmUp(roots);
+            logger.info(added + " of the " + roots.size() + " roots of " + server.getNickname() + " added to the "
+                    + "issuer cache");
+            return added;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Cannot get the roots of " + server.getNickname() + ": " + e.getMessage());
             return 0;
         }
     }
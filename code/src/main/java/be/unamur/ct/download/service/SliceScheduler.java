@@ -0,0 +1,263 @@
+package be.unamur.ct.download.service;
+
+import be.unamur.ct.data.dao.SliceDao;
+import be.unamur.ct.data.service.CheckpointService;
+import be.unamur.ct.download.client.LogClient;
+import be.unamur.ct.download.model.ActiveSlice;
+import be.unamur.ct.download.model.LogProgress;
+import be.unamur.ct.download.model.Server;
+import be.unamur.ct.download.model.Slice;
+import be.unamur.ct.download.thread.SearchSliceThread;
+import be.unamur.ct.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Service class keeping track of the slices being downloaded.
+ * Slices of several servers share the threads downloading slices by weighted fair queuing: every slice is tagged when
+ * queued, and the tags of a server grow with the number of entries queued for it divided by its weight.  Slices with
+ * the lowest tag are downloaded first, so servers started later are not queued behind the slices of the others.
+ * A slice keeps its thread until it is downloaded: slices are planned no larger than slice-max-size entries so that
+ * the tags are compared again often, and the virtual time moves to the tag of each slice as it starts.
+ * When a thread downloading slices becomes idle and no other slice is waiting to be downloaded, it may take half of
+ * the remaining part of the busiest slice.  The split is saved in the database so that it survives a restart: the new
+ * slice right away, the cut of the busy slice through the CheckpointService like the rest of its progress.
+ * Slices downloaded newest first are split the same way, the thread taking over their oldest half.
+ *
+ * @see ActiveSlice
+ */
+@Service
+public class SliceScheduler {
+
+    @Autowired
+    private SliceDao sliceDao;
+    @Autowired
+    private LogClientService logClientService;
+    @Autowired
+    private CheckpointService checkpointService;
+    @Autowired
+    private ThreadPool threadPool;
+
+    @Value("${slice-min-size}")
+    private long minSliceSize;
+
+    @Value("${slice-max-size}")
+    private long maxSliceSize;
+
+    private final Map<Slice, ActiveSlice> active = new ConcurrentHashMap<>();
+    private final Map<Long, Double> finishTags = new HashMap<>();
+    private final Map<Long, AtomicLong> downloaded = new ConcurrentHashMap<>();
+    private double virtualTime;
+    private Logger logger = LoggerFactory.getLogger(SliceScheduler.class);
+
+
+    public SliceScheduler() {}
+
+
+    /**
+     * Returns the fair share tag of a slice about to be queued.
+     * The tag starts at the tag of the next queued slice, or after the last tag given to the server if later, and the
+     * next tag of the server is moved forward by the size of the slice divided by the weight of the server.
+     *
+     * @author Jules Dejaeghere
+     * @param slice Slice to queue
+     * @return Tag of the slice, slices with the lowest tag are downloaded first
+     */
+    public synchronized double fairTag(Slice slice) {
+        SearchSliceThread head = threadPool.peekPendingSlice();
+        double now = head != null && !head.isRetry() ? head.getTag() : virtualTime;
+
+        Server server = slice.getServer();
+        int weight = server.getWeight() != null && server.getWeight() > 0 ? server.getWeight() : 1;
+        double start = Math.max(now, finishTags.getOrDefault(server.getId(), 0.0));
+        long entries = Math.max(1, slice.getLastLeft() - slice.getFirstLeft() + 1);
+
+        finishTags.put(server.getId(), start + (double) entries / weight);
+        virtualTime = Math.max(virtualTime, start);
+        return start;
+    }
+
+
+    /**
+     * Moves the virtual time forward to the tag of a slice taken from the queue by a thread downloading slices.
+     * Slices retrying failed ranges do not move it, they are only downloaded when no planned slice is waiting.
+     *
+     * @author Jules Dejaeghere
+     * @param search Thread about to download its slice
+     */
+    public synchronized void started(SearchSliceThread search) {
+        if (!search.isRetry()) {
+            virtualTime = Math.max(virtualTime, search.getTag());
+        }
+    }
+
+
+    public synchronized double getVirtualTime() {
+        return virtualTime;
+    }
+
+
+    /**
+     * Records entries downloaded from a server
+     *
+     * @author Jules Dejaeghere
+     * @param server  Server the entries were downloaded from
+     * @param entries Number of entries downloaded
+     */
+    public void record(Server server, long entries) {
+        downloaded.computeIfAbsent(server.getId(), id -> new AtomicLong()).addAndGet(entries);
+    }
+
+
+    /**
+     * Returns the download progress of the given servers
+     *
+     * @author Jules Dejaeghere
+     * @param servers Servers to report progress for
+     * @return Progress of each server having slices left, being downloaded or downloaded since the application started
+     */
+    public List<LogProgress> progress(Iterable<Server> servers) {
+        Map<Long, Object[]> left = new HashMap<>();
+        for (Object[] row : sliceDao.countLeftByServer()) {
+            left.put((Long) row[0], row);
+        }
+
+        Map<Long, Integer> running = new HashMap<>();
+        for (Slice s : active.keySet()) {
+            running.merge(s.getServer().getId(), 1, Integer::sum);
+        }
+
+        Map<Long, Integer> queued = new HashMap<>();
+        for (SearchSliceThread t : threadPool.getPendingSlices()) {
+            queued.merge(t.getSlice().getServer().getId(), 1, Integer::sum);
+        }
+
+        List<LogProgress> progress = new ArrayList<>();
+        for (Server server : servers) {
+            Object[] row = left.get(server.getId());
+            AtomicLong count = downloaded.get(server.getId());
+            if (row == null && count == null && !running.containsKey(server.getId())) {
+                continue;
+            }
+
+            progress.add(new LogProgress(server,
+                    row == null ? 0 : ((Number) row[1]).longValue(),
+                    row == null || row[2] == null ? 0 : ((Number) row[2]).longValue(),
+                    running.getOrDefault(server.getId(), 0),
+                    queued.getOrDefault(server.getId(), 0),
+                    count == null ? 0 : count.get()));
+        }
+        return progress;
+    }
+
+
+    /**
+     * Registers a slice which is about to be downloaded
+     *
+     * @author Jules Dejaeghere
+     * @param slice Slice to download
+     * @return The ActiveSlice to reserve ranges from while downloading the slice
+     */
+    public ActiveSlice register(Slice slice) {
+        ActiveSlice activeSlice = new ActiveSlice(slice);
+        active.put(slice, activeSlice);
+        return activeSlice;
+    }
+
+
+    /**
+     * Unregisters a slice once its download is over, it can no longer be split
+     *
+     * @author Jules Dejaeghere
+     * @param activeSlice Slice which is not downloaded anymore
+     */
+    public void unregister(ActiveSlice activeSlice) {
+        active.remove(activeSlice.getSlice());
+    }
+
+
+    /**
+     * Returns the number of entries planned in each slice of a server, so that the slices are shared among the
+     * threads downloading slices.  Slices are never smaller than slice-min-size, nor larger than slice-max-size so that
+     * the slices of servers started later are not queued behind a few large slices.
+     *
+     * @author Jules Dejaeghere
+     * @param entries Number of entries to plan slices for
+     * @return Number of entries for each slice
+     */
+    public long planSliceSize(long entries) {
+        long threads = Math.max(1, threadPool.getThreadsSlice());
+        long size = Math.max(minSliceSize, (entries + threads - 1) / threads);
+        return maxSliceSize > 0 ? Math.min(size, Math.max(minSliceSize, maxSliceSize)) : size;
+    }
+
+
+    /**
+     * Splits the slice having the largest number of entries not yet requested and returns its second half, as a new
+     * slice saved in the database.  Nothing is split while other slices are waiting to be downloaded, or if the
+     * remaining part of every slice is smaller than twice slice-min-size.
+     *
+     * @author Jules Dejaeghere
+     * @return The new slice to download, null if there is nothing to take over
+     */
+    public synchronized Slice steal() {
+        if (threadPool.hasPendingSlices()) {
+            return null;
+        }
+
+        ActiveSlice victim = null;
+        long remaining = 0;
+        for (ActiveSlice a : active.values()) {
+            long r = a.remaining();
+            if (r > remaining) {
+                victim = a;
+                remaining = r;
+            }
+        }
+
+        if (victim == null || remaining < 2 * minSliceSize) {
+            return null;
+        }
+
+        // Split in the middle of the remaining part, at the start of a page of the log when the page size is known
+        Server server = victim.getSlice().getServer();
+        LogClient client = logClientService.getClient(server);
+        boolean descending = victim.getSlice().isDescending();
+        long split = descending ? victim.getStart() + remaining / 2 : victim.getEnd() - remaining / 2 + 1;
+        if (client.getPageSize() > 0) {
+            split -= split % client.getPageSize();
+        }
+
+        // The new slice is the part of the remaining part that the victim would download last
+        Slice stolen;
+        if (descending) {
+            stolen = new Slice(victim.getStart(), split - 1, split, server);
+            stolen.setDescending(true);
+        } else {
+            stolen = new Slice(split, victim.getEnd(), split, server);
+        }
+
+        // Save the new slice before cutting the old one: a crash in between downloads the range twice, never zero
+        // The old slice is saved by the CheckpointService only, the thread downloading it checkpoints it as well
+        stolen = sliceDao.save(stolen);
+        if (victim.cut(split) < 0) {
+            sliceDao.deleteById(stolen.getId());
+            return null;
+        }
+        checkpointService.checkpoint(victim.getSlice());
+
+        logger.info("Split " + victim.getSlice() + " to create " + stolen);
+        return stolen;
+    }
+}
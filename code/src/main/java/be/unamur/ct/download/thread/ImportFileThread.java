@@ -0,0 +1,47 @@
+package be.unamur.ct.download.thread;
+
+
+import be.unamur.ct.download.model.ImportJob;
+import be.unamur.ct.download.service.ImportService;
+
+import java.io.File;
+
+
+/**
+ * Thread class to import the entries of a get-entries dump file
+ */
+public class ImportFileThread extends Thread {
+
+    private File file;
+    private ImportJob job;
+    private ImportService importService;
+
+
+    /**
+     * Constructor
+     *
+     * @author Jules Dejaeghere
+     * @param file          Dump file to import
+     * @param job           Import the file is part of
+     * @param importService Reference to the ImportService to use
+     * @see ImportJob
+     */
+    public ImportFileThread(File file, ImportJob job, ImportService importService) {
+        super("Import - " + file.getName());
+        this.file = file;
+        this.job = job;
+        this.importService = importService;
+    }
+
+
+    /**
+     * Imports the file saved in the variables of the instance
+     *
+     * @author Jules Dejaeghere
+     */
+    @Override
+    public void run() {
+        importService.importFile(file, job);
+    }
+
+}
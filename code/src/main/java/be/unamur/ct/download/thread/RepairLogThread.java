@@ -0,0 +1,42 @@
+package be.unamur.ct.download.thread;
+
+
+import be.unamur.ct.download.model.Server;
+import be.unamur.ct.download.service.ServerService;
+
+
+/**
+ * Thread class to download again the missing entries of a given server
+ */
+public class RepairLogThread extends Thread {
+
+    private Server server;
+    private ServerService serverService;
+
+
+    /**
+     * Constructor
+     *
+     * @author Jules Dejaeghere
+     * @param server        Server to repair
+     * @param serverService Reference to the ServerService to use
+     * @see Server
+     */
+    public RepairLogThread(Server server, ServerService serverService) {
+        super("Repair - " + server.getNickname());
+        this.server = server;
+        this.serverService = serverService;
+    }
+
+
+    /**
+     * Starts the repair process for the server saved in the variables of the instance
+     *
+     * @author Jules Dejaeghere
+     */
+    @Override
+    public void run() {
+        serverService.repair(server);
+    }
+
+}
@@ -0,0 +1,42 @@
+package be.unamur.ct.download.thread;
+
+
+import be.unamur.ct.download.model.Server;
+import be.unamur.ct.download.service.ServerService;
+
+
+/**
+ * Thread class to sample the entries of a given server
+ */
+public class SampleLogThread extends Thread {
+
+    private Server server;
+    private ServerService serverService;
+
+
+    /**
+     * Constructor
+     *
+     * @author Jules Dejaeghere
+     * @param server        Server to sample
+     * @param serverService Reference to the ServerService to use
+     * @see Server
+     */
+    public SampleLogThread(Server server, ServerService serverService) {
+        super("Sample - " + server.getNickname());
+        this.server = server;
+        this.serverService = serverService;
+    }
+
+
+    /**
+     * Starts the sampling process for the server saved in the variables of the instance
+     *
+     * @author Jules Dejaeghere
+     */
+    @Override
+    public void run() {
+        serverService.sample(server);
+    }
+
+}
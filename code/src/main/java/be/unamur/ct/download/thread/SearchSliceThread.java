@@ -3,14 +3,40 @@ package be.unamur.ct.download.thread;
 import be.unamur.ct.download.model.Slice;
 import be.unamur.ct.download.service.ServerService;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 
 /**
- * Thread class to download logs from a slice of a server
+ * Thread class to download logs from a slice of a server.
+ * Threads waiting to be run are ordered so that slices holding the head of a log downloaded newest first are downloaded
+ * first, then planned slices and last slices retrying failed ranges, each by their fair share tag and then in the order
+ * they were submitted.  The backlog of a log downloaded newest first only gets the threads left by the head.
+ *
+ * @see be.unamur.ct.download.service.SliceScheduler
  */
-public class SearchSliceThread extends Thread {
+public class SearchSliceThread extends Thread implements Comparable<SearchSliceThread> {
+
+    private static final AtomicLong sequence = new AtomicLong();
 
     private Slice slice;
     private ServerService serverService;
+    private final double tag;
+    private final boolean head;
+    private final long order = sequence.getAndIncrement();
+
+
+    /**
+     * Constructor
+     *
+     * @author Jules Dejaeghere
+     * @param slice         Slice to download logs from
+     * @param serverService Reference of the ServerService to use
+     * @param tag           Fair share tag of the slice, slices with the lowest tag are downloaded first
+     * @see Slice
+     */
+    public SearchSliceThread(Slice slice, ServerService serverService, double tag) {
+        this(slice, serverService, tag, false);
+    }
 
 
     /**
@@ -19,22 +45,64 @@ public class SearchSliceThread extends Thread {
      * @author Jules Dejaeghere
      * @param slice         Slice to download logs from
      * @param serverService Reference of the ServerService to use
+     * @param tag           Fair share tag of the slice, slices with the lowest tag are downloaded first
+     * @param head          true if the slice holds the head of a log downloaded newest first
      * @see Slice
      */
-    public SearchSliceThread(Slice slice, ServerService serverService) {
+    public SearchSliceThread(Slice slice, ServerService serverService, double tag, boolean head) {
         super("Process - Slice #" + slice.getId());
         this.slice = slice;
         this.serverService = serverService;
+        this.tag = tag;
+        this.head = head;
     }
 
 
     /**
-     * Starts the downloading process for the slice saved in the variables of the instance
+     * Starts the downloading process for the slice saved in the variables of the instance.
+     * Once the slice is over, the thread takes over part of the busiest slice as long as no other slice is waiting
+     * to be downloaded.
      *
      * @author Jules Dejaeghere
      */
     @Override
     public void run() {
-        serverService.searchSlice(slice);
+        serverService.startedSlice(this);
+        Slice current = slice;
+
+        while (current != null && !Thread.currentThread().isInterrupted()) {
+            serverService.searchSlice(current);
+            current = Thread.currentThread().isInterrupted() ? null : serverService.stealSlice();
+        }
+    }
+
+
+    public Slice getSlice() {
+        return slice;
+    }
+
+    public double getTag() {
+        return tag;
+    }
+
+    public boolean isRetry() {
+        return slice.isRetry();
+    }
+
+    public boolean isHead() {
+        return head;
+    }
+
+
+    @Override
+    public int compareTo(SearchSliceThread other) {
+        int priority = Boolean.compare(other.head, head);
+        if (priority == 0) {
+            priority = Boolean.compare(isRetry(), other.isRetry());
+        }
+        if (priority == 0) {
+            priority = Double.compare(tag, other.tag);
+        }
+        return priority != 0 ? priority : Long.compare(order, other.order);
     }
 }
@@ -0,0 +1,163 @@
+package be.unamur.ct.spool.model;
+
+import be.unamur.ct.download.model.LogEntry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * Class used to represent a segment of the spool: a file of fixed size mapped in memory, holding entries one after
+ * the other.  Each record is written as its length followed by the id, the leaf_input and the extra_data of the entry.
+ * The length is written last so that a record is never seen partially written.  A length of -1 marks the end of the
+ * records of the segment, a length of 0 a part of the segment that has not been written yet.
+ *
+ * @see Spool
+ */
+public class Segment {
+
+    static final int END = -1;
+    static final String EXTENSION = ".seg";
+
+    private final long base;
+    private final int size;
+    private final File file;
+    private final MappedByteBuffer buffer;
+
+
+    private Segment(long base, int size, File file) throws IOException {
+        this.base = base;
+        this.size = size;
+        this.file = file;
+        // The mapping stays valid once the file is closed
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+
+    /**
+     * Opens the segment starting at the given offset of the spool, creating its file if needed
+     *
+     * @author Jules Dejaeghere
+     * @param dir  Directory of the spool
+     * @param base Offset of the spool at which the segment starts
+     * @param size Size of the segment in bytes, if it does not exist yet
+     * @return The segment mapped in memory
+     * @throws IOException if the file of the segment cannot be created or mapped
+     */
+    static Segment open(File dir, long base, int size) throws IOException {
+        File file = new File(dir, String.format("%020d", base) + EXTENSION);
+
+        // Existing segments keep their size, even if the configured size changed
+        if (file.length() > 0) {
+            size = (int) file.length();
+        }
+        return new Segment(base, size, file);
+    }
+
+
+    /**
+     * Writes an entry at the given position of the segment
+     *
+     * @author Jules Dejaeghere
+     * @param position Position to write the entry at
+     * @param entry    Entry to write
+     * @return The position following the entry, -1 if the entry does not fit in the segment
+     */
+    int append(int position, LogEntry entry) {
+        int length = 8 + 4 + entry.getLeafInput().length + 4 + entry.getExtraData().length;
+        if (position + 4 + length > size) {
+            if (position + 4 <= size) {
+                buffer.putInt(position, END);
+            }
+            return -1;
+        }
+
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + 4);
+        view.putLong(entry.getId());
+        view.putInt(entry.getLeafInput().length);
+        view.put(entry.getLeafInput());
+        view.putInt(entry.getExtraData().length);
+        view.put(entry.getExtraData());
+        buffer.putInt(position, length);
+
+        return position + 4 + length;
+    }
+
+
+    /**
+     * Returns the length of the record written at the given position
+     *
+     * @author Jules Dejaeghere
+     * @param position Position of the record
+     * @return Length of the record, -1 if no other record follows in this segment, 0 if nothing is written yet
+     */
+    int length(int position) {
+        return position + 4 > size ? END : buffer.getInt(position);
+    }
+
+
+    /**
+     * Reads the entry of the record written at the given position
+     *
+     * @author Jules Dejaeghere
+     * @param position Position of the record
+     * @return The entry of the record
+     */
+    LogEntry read(int position) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + 4);
+        long id = view.getLong();
+        byte[] leafInput = new byte[view.getInt()];
+        view.get(leafInput);
+        byte[] extraData = new byte[view.getInt()];
+        view.get(extraData);
+
+        LogEntry entry = new LogEntry(leafInput, extraData);
+        entry.setId(id);
+        return entry;
+    }
+
+
+    /**
+     * Finds the position following the last complete record, to resume writing after a restart
+     *
+     * @author Jules Dejaeghere
+     * @return Position to write the next record at, -1 if the segment is full
+     */
+    int recover() {
+        int position = 0;
+        int length;
+        while ((length = length(position)) > 0) {
+            position += 4 + length;
+        }
+        return length == END ? -1 : position;
+    }
+
+
+    void force() {
+        buffer.force();
+    }
+
+    boolean delete() {
+        return file.delete();
+    }
+
+    long getBase() {
+        return base;
+    }
+
+    long getEnd() {
+        return base + size;
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
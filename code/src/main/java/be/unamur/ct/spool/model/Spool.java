@@ -0,0 +1,328 @@
+package be.unamur.ct.spool.model;
+
+import be.unamur.ct.download.model.LogEntry;
+import be.unamur.ct.download.model.LogList;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Append-only spool of raw log entries, stored in segments of fixed size mapped in memory.
+ * Entries are identified by their offset in the spool.  Every stage consuming the spool reads it with its own reader
+ * and commits the offset up to which it has processed the entries.  Committed offsets are saved in a file for each
+ * stage, so that a stage resumes where it stopped after a restart, and segments are deleted once every stage has
+ * committed past their end.
+ * The size of the spool can be capped: appending then waits while the entries not committed by every stage take the
+ * maximum size, so that the threads writing the spool are paused while the stages reading it fall behind.
+ *
+ * @see Segment
+ */
+public class Spool {
+
+    private static final String OFFSET_EXTENSION = ".offset";
+
+    private final File dir;
+    private final int segmentSize;
+    private final long maxSize;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final Map<String, Long> committed = new HashMap<>();
+    private Segment head;
+    private volatile long writeOffset;
+
+
+    /**
+     * Opens the spool stored in the given directory, creating it if needed.
+     * Writing resumes after the last complete record of the last segment.
+     *
+     * @author Jules Dejaeghere
+     * @param dir         Directory of the spool
+     * @param segmentSize Size of each segment in bytes
+     * @throws IOException if the directory or the segments cannot be opened
+     */
+    public Spool(File dir, int segmentSize) throws IOException {
+        this(dir, segmentSize, 0);
+    }
+
+
+    /**
+     * Opens the spool stored in the given directory, creating it if needed.
+     * Writing resumes after the last complete record of the last segment.
+     *
+     * @author Jules Dejaeghere
+     * @param dir         Directory of the spool
+     * @param segmentSize Size of each segment in bytes
+     * @param maxSize     Number of bytes not committed by every stage above which appending waits, 0 for no limit
+     * @throws IOException if the directory or the segments cannot be opened
+     */
+    public Spool(File dir, int segmentSize, long maxSize) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxSize = maxSize;
+
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create spool directory " + dir);
+        }
+
+        File[] files = dir.listFiles();
+        for (File f : files == null ? new File[0] : files) {
+            String name = f.getName();
+            if (name.endsWith(Segment.EXTENSION)) {
+                long base = Long.parseLong(name.substring(0, name.length() - Segment.EXTENSION.length()));
+                segments.put(base, Segment.open(dir, base, segmentSize));
+            } else if (name.endsWith(OFFSET_EXTENSION)) {
+                committed.put(name.substring(0, name.length() - OFFSET_EXTENSION.length()), readOffset(f));
+            }
+        }
+
+        if (segments.isEmpty()) {
+            long base = committed.isEmpty() ? 0 : committed.values().stream().max(Long::compare).get();
+            segments.put(base, Segment.open(dir, base, segmentSize));
+        }
+
+        head = segments.lastEntry().getValue();
+        int position = head.recover();
+        if (position < 0) {
+            head = roll();
+            position = 0;
+        }
+        writeOffset = head.getBase() + position;
+    }
+
+
+    /**
+     * Appends an entry at the end of the spool, waiting first until the stages have committed enough entries if the
+     * spool holds its maximum size
+     *
+     * @author Jules Dejaeghere
+     * @param entry Entry to append
+     * @return Offset of the spool following the entry
+     * @throws IOException if a new segment cannot be created or if the entry is larger than a segment
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public synchronized long append(LogEntry entry) throws IOException {
+        while (isFull()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the spool to be consumed");
+            }
+        }
+
+        int next = head.append((int) (writeOffset - head.getBase()), entry);
+        if (next < 0) {
+            head = roll();
+            next = head.append(0, entry);
+            if (next < 0) {
+                throw new IOException("Entry " + entry.getId() + " is larger than a spool segment");
+            }
+        }
+
+        writeOffset = head.getBase() + next;
+        return writeOffset;
+    }
+
+
+    /**
+     * Appends entries of a list at the end of the spool, taking the lock of the spool once for all of them.
+     * Like append(LogEntry), each entry waits first if the spool holds its maximum size.
+     *
+     * @author Jules Dejaeghere
+     * @param entries List of entries
+     * @param from    Index in the list of the first entry to append
+     * @param to      Index in the list following the last entry to append
+     * @return Number of entries appended, fewer than to - from only if an error prevented appending the next entry
+     * @throws IOException if the first entry cannot be appended
+     * @throws InterruptedIOException if the thread is interrupted while waiting to append the first entry
+     */
+    public synchronized int append(LogList entries, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            try {
+                append(entries.get(i));
+            } catch (IOException e) {
+                if (i == from) {
+                    throw e;
+                }
+                return i - from;
+            }
+        }
+        return to - from;
+    }
+
+
+    private Segment roll() throws IOException {
+        head.force();
+        Segment segment = Segment.open(dir, head.getEnd(), segmentSize);
+        segments.put(segment.getBase(), segment);
+        return segment;
+    }
+
+
+    /**
+     * Returns a reader for the given stage, starting at the offset last committed by the stage or at the first entry
+     * of the spool if the stage never committed any offset
+     *
+     * @author Jules Dejaeghere
+     * @param stage Name of the stage reading the spool
+     * @return The reader of the stage
+     */
+    public synchronized Reader reader(String stage) {
+        Long offset = committed.get(stage);
+        if (offset == null) {
+            offset = segments.firstKey();
+            committed.put(stage, offset);
+        }
+        return new Reader(Math.max(offset, segments.firstKey()));
+    }
+
+
+    /**
+     * Saves the offset up to which a stage has processed the entries of the spool, and deletes the segments processed
+     * by every stage.  The segment being written is never deleted.
+     *
+     * @author Jules Dejaeghere
+     * @param stage  Name of the stage
+     * @param offset Offset up to which all the entries have been processed
+     * @throws IOException if the offset cannot be saved
+     */
+    public synchronized void commit(String stage, long offset) throws IOException {
+        try (RandomAccessFile f = new RandomAccessFile(new File(dir, stage + OFFSET_EXTENSION), "rw")) {
+            f.setLength(0);
+            f.writeLong(offset);
+        }
+        committed.put(stage, offset);
+
+        long min = committed.values().stream().min(Long::compare).orElse(0L);
+        List<Segment> consumed = new ArrayList<>(segments.headMap(head.getBase()).values());
+        for (Segment segment : consumed) {
+            if (segment.getEnd() <= min) {
+                segments.remove(segment.getBase());
+                segment.delete();
+            }
+        }
+        notifyAll();
+    }
+
+
+    /**
+     * Tells whether the entries not committed by every stage take the maximum size of the spool
+     *
+     * @author Jules Dejaeghere
+     * @return true if appending has to wait
+     */
+    public synchronized boolean isFull() {
+        return maxSize > 0 && getPending() >= maxSize;
+    }
+
+
+    /**
+     * Returns the number of bytes of the spool not committed by every stage yet
+     *
+     * @author Jules Dejaeghere
+     * @return Number of bytes from the oldest offset committed to the end of the spool
+     */
+    public synchronized long getPending() {
+        long min = committed.values().stream().min(Long::compare).orElse(segments.firstKey());
+        return writeOffset - Math.max(min, segments.firstKey());
+    }
+
+
+    private static long readOffset(File f) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            return raf.length() >= 8 ? raf.readLong() : 0;
+        }
+    }
+
+
+    private synchronized Segment segmentAt(long offset) {
+        Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+        return entry == null ? null : entry.getValue();
+    }
+
+
+    /**
+     * Flushes the segment being written to the disk
+     *
+     * @author Jules Dejaeghere
+     */
+    public synchronized void force() {
+        head.force();
+    }
+
+    public long getWriteOffset() {
+        return writeOffset;
+    }
+
+    public synchronized long getCommitted(String stage) {
+        return committed.getOrDefault(stage, 0L);
+    }
+
+    public synchronized int getSegments() {
+        return segments.size();
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+
+    /**
+     * Class used to read the entries of the spool in the order they were appended.
+     * A reader is meant to be used by a single thread.
+     */
+    public class Reader {
+
+        private long position;
+
+        private Reader(long position) {
+            this.position = position;
+        }
+
+
+        /**
+         * Reads the next entry of the spool
+         *
+         * @author Jules Dejaeghere
+         * @return The next entry, null if every entry appended so far has been read
+         */
+        public LogEntry next() {
+            while (position < writeOffset) {
+                Segment segment = segmentAt(position);
+                int local = (int) (position - segment.getBase());
+                int length = segment.length(local);
+
+                if (length > 0) {
+                    position += 4 + length;
+                    return segment.read(local);
+                }
+
+                // End of the records of the segment, the next one starts at its end
+                position = segment.getEnd();
+            }
+            return null;
+        }
+
+
+        /**
+         * Returns the offset following the last entry read
+         *
+         * @author Jules Dejaeghere
+         * @return Offset of the next entry to read
+         */
+        public long getPosition() {
+            return position;
+        }
+    }
+}
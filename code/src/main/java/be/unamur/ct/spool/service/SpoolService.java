@@ -0,0 +1,266 @@
+package be.unamur.ct.spool.service;
+
+import be.unamur.ct.decode.service.DecodeService;
+import be.unamur.ct.decode.thread.DecodeBatchTask;
+import be.unamur.ct.download.model.LogEntry;
+import be.unamur.ct.download.model.LogList;
+import be.unamur.ct.spool.model.Spool;
+import be.unamur.ct.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Service class handing the downloaded entries over to the decoder through a durable spool.
+ * Threads downloading slices append the raw entries to the spool, and the slice only moves past them once they are
+ * written.  A single thread reads the spool and queues the entries to the decodeExecutor at the pace of the decoder.
+ * The decode stage commits the offset before the oldest entry not decoded yet, so that entries being decoded when
+ * the application stops are decoded again after a restart, without being downloaded again.
+ * The spool holds at most spool-max-mb MB of entries not decoded yet: past this size, the threads downloading slices
+ * wait until the decoder catches up, as they do with the decode queue when the spool is disabled.
+ *
+ * @see Spool
+ */
+@Service
+public class SpoolService {
+
+    static final String DECODE_STAGE = "decode";
+
+    @Autowired
+    private DecodeService decodeService;
+    @Autowired
+    private ThreadPool threadPool;
+
+    @Value("${spool-enabled}")
+    private boolean enabled;
+
+    @Value("${spool-dir}")
+    private String dir;
+
+    @Value("${spool-segment-mb}")
+    private int segmentMb;
+
+    @Value("${spool-max-mb}")
+    private int maxMb;
+
+    @Value("${spool-commit-entries}")
+    private int commitEntries;
+
+    private Spool spool;
+    private volatile boolean running;
+    private volatile long readPosition;
+    private final ConcurrentSkipListSet<Long> decoding = new ConcurrentSkipListSet<>();
+    private Logger logger = LoggerFactory.getLogger(SpoolService.class);
+
+
+    public SpoolService() {}
+
+
+    /**
+     * Opens the spool and starts reading it, entries left in the spool by the last run are decoded first
+     *
+     * @author Jules Dejaeghere
+     * @throws IOException if the spool cannot be opened
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        spool = new Spool(new File(dir), segmentMb << 20, (long) maxMb << 20);
+        logger.info("Spool opened in " + spool.getDir().getAbsolutePath() + ", "
+                + (spool.getWriteOffset() - spool.getCommitted(DECODE_STAGE)) + " bytes left to decode");
+
+        running = true;
+        threadPool.getSpoolExecutor().execute(this::consume);
+    }
+
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+    /**
+     * Appends the first entries of a list to the spool, waiting while the spool holds spool-max-mb MB of entries not
+     * decoded yet
+     *
+     * @author Jules Dejaeghere
+     * @param entries List of downloaded entries
+     * @param count   Number of entries of the list to append
+     * @return Number of entries appended, fewer than count if the spool cannot be written
+     * @throws InterruptedIOException if the thread is interrupted while waiting for the spool to be consumed, the
+     * entries appended before are decoded from the spool
+     */
+    public int append(LogList entries, int count) throws InterruptedIOException {
+        int written = 0;
+        try {
+            while (written < count) {
+                written += spool.append(entries, written, count);
+            }
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            logger.error("Cannot write entries to the spool after " + written + " of " + count + ": "
+                    + e.getMessage());
+        }
+        return written;
+    }
+
+
+    /**
+     * Reads the spool and queues its entries to the decodeExecutor, by batches of decode-batch-size entries.
+     * A batch is queued once full, or as soon as the reader caught up with the entries appended.
+     * Decoded batches are tracked by the offset of their first entry in the spool: the decode stage commits the offset
+     * of the oldest batch still being decoded, or the read position when every batch queued has been decoded.
+     *
+     * @author Jules Dejaeghere
+     */
+    private void consume() {
+        Spool.Reader reader = spool.reader(DECODE_STAGE);
+        readPosition = reader.getPosition();
+        int uncommitted = 0;
+        int batchSize = ThreadPool.getDecodeBatchSize();
+        List<LogEntry> batch = new ArrayList<>(batchSize);
+        long batchOffset = readPosition;
+
+        try {
+            while (running) {
+                long offset = reader.getPosition();
+                LogEntry entry = reader.next();
+
+                if (entry == null) {
+                    if (!batch.isEmpty()) {
+                        queue(batch, batchOffset, offset);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                    commit();
+                    uncommitted = 0;
+                    TimeUnit.MILLISECONDS.sleep(20);
+                    continue;
+                }
+
+                if (batch.isEmpty()) {
+                    batchOffset = offset;
+                }
+                batch.add(entry);
+                if (batch.size() >= batchSize) {
+                    queue(batch, batchOffset, reader.getPosition());
+                    batch = new ArrayList<>(batchSize);
+                }
+
+                if (++uncommitted >= commitEntries) {
+                    commit();
+                    uncommitted = 0;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RejectedExecutionException e) {
+            logger.warn("Decoder stopped, entries left in the spool will be decoded on next start");
+        }
+    }
+
+
+    /**
+     * Queues a batch of entries read from the spool to the decodeExecutor, tracked until it is decoded
+     *
+     * @author Jules Dejaeghere
+     * @param batch  Entries read from the spool
+     * @param offset Offset of the first entry of the batch
+     * @param next   Offset following the last entry of the batch
+     */
+    private void queue(List<LogEntry> batch, long offset, long next) {
+        decoding.add(offset);
+        threadPool.getDecodeExecutor()
+                .execute(new DecodeBatchTask(batch, decodeService, () -> decoding.remove(offset)));
+        readPosition = next;
+    }
+
+
+    /**
+     * Commits the offset of the decode stage, before the oldest entry not decoded yet
+     *
+     * @author Jules Dejaeghere
+     */
+    public synchronized void commit() {
+        if (spool == null) {
+            return;
+        }
+
+        Long oldest = decoding.isEmpty() ? null : decoding.first();
+        long offset = oldest != null ? oldest : readPosition;
+        try {
+            spool.commit(DECODE_STAGE, offset);
+        } catch (IOException e) {
+            logger.error("Cannot commit spool offset " + offset + ": " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Stops reading the spool and saves the offset of the decode stage before the application stops
+     *
+     * @author Jules Dejaeghere
+     */
+    @PreDestroy
+    public void stop() {
+        if (spool == null) {
+            return;
+        }
+
+        running = false;
+        threadPool.getSpoolExecutor().shutdown();
+        try {
+            threadPool.getSpoolExecutor().awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        commit();
+        spool.force();
+        logger.info("Spool closed, " + getPending() + " bytes left to decode");
+    }
+
+
+    /**
+     * Returns the number of bytes of the spool not committed by the decode stage yet
+     *
+     * @author Jules Dejaeghere
+     * @return Number of bytes waiting to be decoded
+     */
+    public long getPending() {
+        return spool == null ? 0 : spool.getWriteOffset() - spool.getCommitted(DECODE_STAGE);
+    }
+
+    public int getSegments() {
+        return spool == null ? 0 : spool.getSegments();
+    }
+
+    public int getMaxMb() {
+        return maxMb;
+    }
+
+    public boolean isFull() {
+        return spool != null && spool.isFull();
+    }
+
+    public long getDecoding() {
+        return decoding.size();
+    }
+}
@@ -0,0 +1,35 @@
+package be.unamur.ct.thread;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+
+/**
+ * Policy making the thread submitting a task to a full executor wait until the queue of the executor has room for it.
+ * Producers are paused while the consumers of the executor fall behind.
+ */
+public class BlockingPolicy implements RejectedExecutionHandler {
+
+    /**
+     * Waits until the task can be queued
+     *
+     * @author Jules Dejaeghere
+     * @param r        Task rejected by the executor
+     * @param executor Executor having rejected the task
+     * @throws RejectedExecutionException if the executor is shut down or if the thread is interrupted while waiting
+     */
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+
+        try {
+            executor.getQueue().put(r);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the queue", e);
+        }
+    }
+}
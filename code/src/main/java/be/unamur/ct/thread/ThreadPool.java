@@ -1,12 +1,24 @@
 package be.unamur.ct.thread;
 
+import be.unamur.ct.decode.thread.DecodeBatchTask;
+import be.unamur.ct.decode.thread.DecodeSpillPolicy;
+import be.unamur.ct.download.thread.SearchSliceThread;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -18,15 +30,26 @@ import java.util.concurrent.Executors;
 @Component
 public class ThreadPool {
     static private ExecutorService serverExecutor = null;
-    static private ExecutorService sliceExecutor = null;
-    static private ExecutorService decodeExecutor = null;
+    static private ThreadPoolExecutor sliceExecutor = null;
+    static private ThreadPoolExecutor decodeExecutor = null;
     static private ExecutorService VATScrapperExecutor = null;
+    static private ScheduledExecutorService checkpointExecutor = null;
+    static private ScheduledExecutorService followExecutor = null;
+    static private ExecutorService spoolExecutor = null;
+    static private ExecutorService importExecutor = null;
 
     static private Logger logger = LoggerFactory.getLogger(ThreadPool.class);
 
     static private Integer threadsDecode;
     static private Integer threadsSlice;
     static private Integer threadsScrap;
+    static private Integer threadsFollow;
+    static private Integer threadsServer;
+    static private Integer threadsImport;
+    static private Integer decodeQueueCapacity;
+    static private Integer decodeBatchSize;
+    static private String decodeQueuePolicy;
+    static private String decodeSpillDir;
 
 
     /**
@@ -64,23 +87,186 @@ public class ThreadPool {
         this.threadsScrap = value;
     }
 
+
     /**
-     * ExecutorService used to handle threads decoding certificates
+     * Because the @Value cannot be applied to a static variable, this method set the @Value to the static variable
+     *
+     * @author Jules Dejaeghere
+     * @param value Injected value to set
+     */
+    @Value("${threads-follow}")
+    public void setThreadsFollow(Integer value) {
+        this.threadsFollow = value;
+    }
+
+
+    /**
+     * Because the @Value cannot be applied to a static variable, this method set the @Value to the static variable
+     *
+     * @author Jules Dejaeghere
+     * @param value Injected value to set
+     */
+    @Value("${threads-server}")
+    public void setThreadsServer(Integer value) {
+        this.threadsServer = value;
+    }
+
+
+    /**
+     * Because the @Value cannot be applied to a static variable, this method set the @Value to the static variable
+     *
+     * @author Jules Dejaeghere
+     * @param value Injected value to set
+     */
+    @Value("${threads-import}")
+    public void setThreadsImport(Integer value) {
+        this.threadsImport = value;
+    }
+
+    /**
+     * Because the @Value cannot be applied to a static variable, this method set the @Value to the static variable
+     *
+     * @author Jules Dejaeghere
+     * @param value Injected value to set
+     */
+    @Value("${decode-queue-capacity}")
+    public void setDecodeQueueCapacity(Integer value) {
+        this.decodeQueueCapacity = value;
+    }
+
+
+    /**
+     * Because the @Value cannot be applied to a static variable, this method set the @Value to the static variable
+     *
+     * @author Jules Dejaeghere
+     * @param value Injected value to set
+     */
+    @Value("${decode-batch-size}")
+    public void setDecodeBatchSize(Integer value) {
+        this.decodeBatchSize = value;
+    }
+
+
+    /**
+     * Because the @Value cannot be applied to a static variable, this method set the @Value to the static variable
+     *
+     * @author Jules Dejaeghere
+     * @param value Injected value to set
+     */
+    @Value("${decode-queue-policy}")
+    public void setDecodeQueuePolicy(String value) {
+        this.decodeQueuePolicy = value;
+    }
+
+
+    /**
+     * Because the @Value cannot be applied to a static variable, this method set the @Value to the static variable
+     *
+     * @author Jules Dejaeghere
+     * @param value Injected value to set
+     */
+    @Value("${decode-spill-dir:}")
+    public void setDecodeSpillDir(String value) {
+        this.decodeSpillDir = value;
+    }
+
+
+    /**
+     * ExecutorService used to handle threads decoding certificates.
+     * Entries are decoded by batches of at most decode-batch-size entries, one DecodeBatchTask per batch.
+     * Its queue holds at most decode-queue-capacity entries, what happens to the threads downloading certificates when
+     * the queue is full depends on decode-queue-policy:
+     *  - block: they wait for room in the queue
+     *  - caller-runs: they decode the batch themselves
+     *  - spill: the entries are written to a file in decode-spill-dir and queued again later
      *
      * @author Jules Dejaeghere
      * @return ExecutorService to decode certificates
      */
     static public synchronized ExecutorService getDecodeExecutor() {
         if (decodeExecutor == null) {
-            logger.info("Creating " + threadsDecode + " threads for decodeExecutor");
-            decodeExecutor = Executors.newFixedThreadPool(threadsDecode);
+            int batches = Math.max(1, decodeQueueCapacity / getDecodeBatchSize());
+            logger.info("Creating " + threadsDecode + " threads for decodeExecutor, queue of " + batches
+                    + " batches of " + getDecodeBatchSize() + " entries (" + decodeQueuePolicy + ")");
+            decodeExecutor = new ThreadPoolExecutor(threadsDecode, threadsDecode, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(batches), decodePolicy());
         }
         return decodeExecutor;
     }
 
 
+    static private RejectedExecutionHandler decodePolicy() {
+        switch (decodeQueuePolicy) {
+            case "caller-runs":
+                return new ThreadPoolExecutor.CallerRunsPolicy();
+            case "spill":
+                String dir = decodeSpillDir == null || decodeSpillDir.isEmpty()
+                        ? System.getProperty("java.io.tmpdir") : decodeSpillDir;
+                return new DecodeSpillPolicy(new File(dir), getDecodeBatchSize());
+            case "block":
+                return new BlockingPolicy();
+            default:
+                throw new IllegalArgumentException("Unknown decode-queue-policy: " + decodeQueuePolicy);
+        }
+    }
+
+
+    /**
+     * Returns the number of entries waiting to be decoded, including the entries spilled to a file
+     *
+     * @author Jules Dejaeghere
+     * @return Number of entries waiting in the queue of the decodeExecutor
+     */
+    static public synchronized long getDecodeQueueSize() {
+        if (decodeExecutor == null) {
+            return 0;
+        }
+        long size = 0;
+        for (Runnable task : decodeExecutor.getQueue()) {
+            size += task instanceof DecodeBatchTask ? ((DecodeBatchTask) task).size() : 1;
+        }
+        return size + getDecodeSpilled();
+    }
+
+
     /**
-     * ExecutorService used to handle threads downloading logs from slices
+     * Returns the number of entries waiting in the spill file of the decodeExecutor
+     *
+     * @author Jules Dejaeghere
+     * @return Number of spilled entries, 0 if the decodeExecutor does not spill
+     */
+    static public synchronized long getDecodeSpilled() {
+        if (decodeExecutor != null && decodeExecutor.getRejectedExecutionHandler() instanceof DecodeSpillPolicy) {
+            return ((DecodeSpillPolicy) decodeExecutor.getRejectedExecutionHandler()).getSpilled();
+        }
+        return 0;
+    }
+
+
+    static public int getDecodeQueueCapacity() {
+        return decodeQueueCapacity;
+    }
+
+
+    /**
+     * Returns the number of entries decoded by each task of the decodeExecutor
+     *
+     * @author Jules Dejaeghere
+     * @return Maximum number of entries of a DecodeBatchTask, at least 1
+     */
+    static public int getDecodeBatchSize() {
+        return decodeBatchSize == null ? 1 : Math.max(1, decodeBatchSize);
+    }
+
+
+    static public String getDecodeQueuePolicy() {
+        return decodeQueuePolicy;
+    }
+
+
+    /**
+     * ExecutorService used to handle threads downloading logs from slices.
+     * Waiting threads are run by priority, only SearchSliceThread may be executed by this ExecutorService
      *
      * @author Jules Dejaeghere
      * @return ExecutorService to download logs form slices
@@ -88,21 +274,82 @@ public class ThreadPool {
     static public synchronized ExecutorService getSliceExecutor() {
         if (sliceExecutor == null) {
             logger.info("Creating " + threadsSlice + " threads for sliceExecutor");
-            sliceExecutor = Executors.newFixedThreadPool(threadsSlice);
+            sliceExecutor = new ThreadPoolExecutor(threadsSlice, threadsSlice, 0L, TimeUnit.MILLISECONDS,
+                    new PriorityBlockingQueue<Runnable>());
         }
         return sliceExecutor;
     }
 
 
     /**
-     * ExecutorService used to handle threads creating slices from a server and threads resuming VAT scrapping
+     * Returns the number of threads downloading slices, as configured
+     *
+     * @author Jules Dejaeghere
+     * @return Number of threads of the sliceExecutor
+     */
+    static public int getThreadsSlice() {
+        return threadsSlice;
+    }
+
+
+    /**
+     * Tells whether planned slices are waiting for a thread of the sliceExecutor to be downloaded.
+     * Slices retrying failed ranges have a lower priority and are not taken into account
+     *
+     * @author Jules Dejaeghere
+     * @return true if planned slices are waiting in the queue of the sliceExecutor, false otherwise
+     */
+    static public synchronized boolean hasPendingSlices() {
+        SearchSliceThread head = peekPendingSlice();
+        return head != null && !head.isRetry();
+    }
+
+
+    /**
+     * Returns the thread that the sliceExecutor will run next, without removing it from the queue
+     *
+     * @author Jules Dejaeghere
+     * @return The next thread to run, null if no slice is waiting
+     */
+    static public synchronized SearchSliceThread peekPendingSlice() {
+        if (sliceExecutor == null) {
+            return null;
+        }
+        Runnable head = sliceExecutor.getQueue().peek();
+        return head instanceof SearchSliceThread ? (SearchSliceThread) head : null;
+    }
+
+
+    /**
+     * Returns the threads waiting to be run by the sliceExecutor
+     *
+     * @author Jules Dejaeghere
+     * @return List of the waiting threads, in no particular order
+     */
+    static public synchronized List<SearchSliceThread> getPendingSlices() {
+        List<SearchSliceThread> pending = new ArrayList<>();
+        if (sliceExecutor != null) {
+            for (Runnable r : sliceExecutor.getQueue()) {
+                if (r instanceof SearchSliceThread) {
+                    pending.add((SearchSliceThread) r);
+                }
+            }
+        }
+        return pending;
+    }
+
+
+    /**
+     * ExecutorService used to handle threads creating slices from a server and threads resuming VAT scrapping.
+     * Several servers may be started at once, their slices share the threads of the sliceExecutor
      *
      * @author Jules Dejaeghere
      * @return ExecutorService to create slices and to resume VAT scrapping
      */
     static public synchronized ExecutorService getServerExecutor() {
         if (serverExecutor == null) {
-            serverExecutor = Executors.newSingleThreadExecutor();
+            logger.info("Creating " + threadsServer + " threads for serverExecutor");
+            serverExecutor = Executors.newFixedThreadPool(threadsServer);
         }
         return serverExecutor;
     }
@@ -121,4 +368,62 @@ public class ThreadPool {
         }
         return VATScrapperExecutor;
     }
-}
\ No newline at end of file
+
+
+    /**
+     * ScheduledExecutorService used to periodically save the progress of the slices being downloaded
+     *
+     * @author Jules Dejaeghere
+     * @return ScheduledExecutorService to save slices
+     */
+    static public synchronized ScheduledExecutorService getCheckpointExecutor() {
+        if (checkpointExecutor == null) {
+            checkpointExecutor = Executors.newSingleThreadScheduledExecutor();
+        }
+        return checkpointExecutor;
+    }
+
+
+    /**
+     * ScheduledExecutorService used to poll the followed log servers and download their new entries
+     *
+     * @author Jules Dejaeghere
+     * @return ScheduledExecutorService to follow log servers
+     */
+    static public synchronized ScheduledExecutorService getFollowExecutor() {
+        if (followExecutor == null) {
+            logger.info("Creating " + threadsFollow + " threads for followExecutor");
+            followExecutor = Executors.newScheduledThreadPool(threadsFollow);
+        }
+        return followExecutor;
+    }
+
+
+    /**
+     * ExecutorService used to read the entries of the spool and send them to the decodeExecutor
+     *
+     * @author Jules Dejaeghere
+     * @return ExecutorService to read the spool
+     */
+    static public synchronized ExecutorService getSpoolExecutor() {
+        if (spoolExecutor == null) {
+            spoolExecutor = Executors.newSingleThreadExecutor();
+        }
+        return spoolExecutor;
+    }
+
+
+    /**
+     * ExecutorService used to handle threads reading get-entries dump files to import
+     *
+     * @author Jules Dejaeghere
+     * @return ExecutorService to import dump files
+     */
+    static public synchronized ExecutorService getImportExecutor() {
+        if (importExecutor == null) {
+            logger.info("Creating " + threadsImport + " threads for importExecutor");
+            importExecutor = Executors.newFixedThreadPool(threadsImport);
+        }
+        return importExecutor;
+    }
+}
@@ -4,11 +4,21 @@ import be.unamur.ct.data.dao.CertificateDao;
 import be.unamur.ct.data.dao.ServerDao;
 import be.unamur.ct.data.service.CertificateService;
 import be.unamur.ct.decode.model.Certificate;
+import be.unamur.ct.decode.service.DedupeService;
+import be.unamur.ct.decode.service.DomainFilter;
+import be.unamur.ct.decode.service.IssuerCache;
 import be.unamur.ct.download.model.Server;
+import be.unamur.ct.download.service.FollowService;
+import be.unamur.ct.download.service.ImportService;
+import be.unamur.ct.download.service.LogClientService;
 import be.unamur.ct.download.service.ServerService;
+import be.unamur.ct.download.service.SliceScheduler;
+import be.unamur.ct.download.thread.RepairLogThread;
+import be.unamur.ct.download.thread.SampleLogThread;
 import be.unamur.ct.download.thread.ScanLogThread;
 import be.unamur.ct.scrap.service.VATScrapper;
 import be.unamur.ct.scrap.thread.ResumeVATScrapThread;
+import be.unamur.ct.spool.service.SpoolService;
 import be.unamur.ct.thread.ThreadPool;
 import org.javatuples.Pair;
 import org.slf4j.Logger;
@@ -16,6 +26,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -23,8 +34,10 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -51,6 +64,30 @@ public class WebController {
     @Autowired
     private ThreadPool threadPool;
 
+    @Autowired
+    private LogClientService logClientService;
+
+    @Autowired
+    private FollowService followService;
+
+    @Autowired
+    private SliceScheduler sliceScheduler;
+
+    @Autowired
+    private SpoolService spoolService;
+
+    @Autowired
+    private DedupeService dedupeService;
+
+    @Autowired
+    private DomainFilter domainFilter;
+
+    @Autowired
+    private IssuerCache issuerCache;
+
+    @Autowired
+    private ImportService importService;
+
     private Logger logger = LoggerFactory.getLogger(WebController.class);
 
 
@@ -150,17 +187,30 @@ public class WebController {
                 threadPool.getDecodeExecutor().isShutdown() ?
                         (threadPool.getDecodeExecutor().isTerminated() ? "Closed" : "Closing") : "Running");
 
+        model.addAttribute("decodeQueue", threadPool.getDecodeQueueSize());
+        model.addAttribute("decodeCapacity", threadPool.getDecodeQueueCapacity());
+        model.addAttribute("decodePolicy", threadPool.getDecodeQueuePolicy());
+        model.addAttribute("decodeSpilled", threadPool.getDecodeSpilled());
+        model.addAttribute("spool", spoolService);
+        model.addAttribute("dedupe", dedupeService);
+        model.addAttribute("domainFilter", domainFilter);
+        model.addAttribute("issuerCache", issuerCache);
+
         model.addAttribute("vat",
                 threadPool.getVATScrapperExecutor().isShutdown() ?
                         (threadPool.getVATScrapperExecutor().isTerminated() ? "Closed" : "Closing") : "Running");
 
+        model.addAttribute("clients", logClientService.getClients());
+        model.addAttribute("progress", sliceScheduler.progress(serverDao.findAll()));
+        model.addAttribute("imports", importService.getJobs());
+
         return "status";
 
     }
 
 
     /**
-     * Stops the serverExecutor and the sliceExecutor in order to stop the downloading activity of the application.
+     * Stops the serverExecutor, the sliceExecutor and the followExecutor in order to stop the downloading activity of the application.
      * Redirects to the status page
      *
      * @author Jules Dejaeghere
@@ -171,6 +221,7 @@ public class WebController {
     public String stopdown() {
         threadPool.getServerExecutor().shutdown();
         threadPool.getSliceExecutor().shutdownNow();
+        threadPool.getFollowExecutor().shutdownNow();
 
         return "redirect:/status";
     }
@@ -313,6 +364,152 @@ public class WebController {
     }
 
 
+    /**
+     * Sets the bounds of the timestamps of the entries to download from a server and redirects to the server list page.
+     * Bounds apply to the slices planned from now on and to the entries downloaded from now on.
+     *
+     * @author Jules Dejaeghere
+     * @param id     Id of the server to bound
+     * @param after  Day from which entries are downloaded, no lower bound if empty
+     * @param before Day before which entries are downloaded, no upper bound if empty
+     * @return       Redirection to apply
+     */
+    @GetMapping("/bounds")
+    public String bounds(@RequestParam("id") long id,
+                         @RequestParam("after") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<Date> after,
+                         @RequestParam("before") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) Optional<Date> before) {
+
+        if (serverDao.findById(id) != null) {
+            serverDao.updateBounds(id, after.orElse(null), before.orElse(null));
+        }
+
+        return "redirect:/serverList";
+    }
+
+
+    /**
+     * Sets the order in which the entries of a server are downloaded and redirects to the server list page.
+     * The order applies to the slices planned from now on, slices already planned keep their order.
+     *
+     * @author Jules Dejaeghere
+     * @param id     Id of the server
+     * @param newest true to download the newest entries first, false to download the oldest entries first
+     * @return       Redirection to apply
+     */
+    @GetMapping("/order")
+    public String order(@RequestParam("id") long id, @RequestParam("newest") boolean newest) {
+
+        if (serverDao.findById(id) != null) {
+            serverDao.updateNewestFirst(id, newest);
+        }
+
+        return "redirect:/serverList";
+    }
+
+
+    /**
+     * Downloads again the missing entries of a server and redirects to the server list page
+     *
+     * @author Jules Dejaeghere
+     * @param id    Id of the server to repair
+     * @return      Redirection to apply
+     */
+    @GetMapping("/repair")
+    public String repair(@RequestParam("id") long id) {
+
+        Server myServer = serverDao.findById(id);
+
+        if (myServer != null) {
+            RepairLogThread repair = new RepairLogThread(myServer, serverService);
+            threadPool.getServerExecutor().execute(repair);
+        }
+
+        return "redirect:/serverList";
+    }
+
+
+    /**
+     * Samples the entries of a server to estimate the density of the wanted certificates along its log, and redirects
+     * to the server list page
+     *
+     * @author Jules Dejaeghere
+     * @param id    Id of the server to sample
+     * @return      Redirection to apply
+     */
+    @GetMapping("/sample")
+    public String sample(@RequestParam("id") long id) {
+
+        Server myServer = serverDao.findById(id);
+
+        if (myServer != null) {
+            SampleLogThread sample = new SampleLogThread(myServer, serverService);
+            threadPool.getServerExecutor().execute(sample);
+        }
+
+        return "redirect:/serverList";
+    }
+
+
+    /**
+     * Starts following the head of a server and redirects to the server list page
+     *
+     * @author Jules Dejaeghere
+     * @param id    Id of the server to follow
+     * @return      Redirection to apply
+     */
+    @GetMapping("/follow")
+    public String follow(@RequestParam("id") long id) {
+
+        Server myServer = serverDao.findById(id);
+
+        if (myServer != null) {
+            followService.follow(myServer);
+        }
+
+        return "redirect:/serverList";
+    }
+
+
+    /**
+     * Stops following the head of a server and redirects to the server list page
+     *
+     * @author Jules Dejaeghere
+     * @param id    Id of the server to stop following
+     * @return      Redirection to apply
+     */
+    @GetMapping("/unfollow")
+    public String unfollow(@RequestParam("id") long id) {
+
+        Server myServer = serverDao.findById(id);
+
+        if (myServer != null) {
+            followService.unfollow(myServer);
+        }
+
+        return "redirect:/serverList";
+    }
+
+
+    /**
+     * Imports the get-entries dump files of a directory, or a single dump file, and redirects to the status page
+     *
+     * @author Jules Dejaeghere
+     * @param path  Directory or file to import, on the machine running the application
+     * @return      Redirection to apply
+     */
+    @GetMapping("/import")
+    public String importDumps(@RequestParam("path") String path) {
+
+        try {
+            importService.importPath(path);
+        } catch (IOException e) {
+            logger.error("Cannot import " + path + ": " + e.getMessage());
+        }
+
+        return "redirect:/status";
+    }
+
+
     /**
      * Resumes the VAT scrapping for the certificates not yet scrapped in the database
      * Redirects to the home page
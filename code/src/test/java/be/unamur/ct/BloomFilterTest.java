@@ -0,0 +1,52 @@
+package be.unamur.ct;
+
+
+import be.unamur.ct.decode.model.BloomFilter;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.junit.Assert.*;
+
+
+public class BloomFilterTest {
+
+    private static byte[] fingerprint(long value) throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-256").digest(ByteBuffer.allocate(8).putLong(value).array());
+    }
+
+
+    @Test
+    public void testNoFalseNegative() throws NoSuchAlgorithmException {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+
+        for (long i = 0; i < 10000; i++) {
+            filter.put(fingerprint(i));
+        }
+        for (long i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain(fingerprint(i)));
+        }
+        assertFalse(filter.put(fingerprint(42)));
+    }
+
+
+    @Test
+    public void testFalsePositiveRate() throws NoSuchAlgorithmException {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (long i = 0; i < 10000; i++) {
+            filter.put(fingerprint(i));
+        }
+
+        int positives = 0;
+        for (long i = 10000; i < 110000; i++) {
+            if (filter.mightContain(fingerprint(i))) {
+                positives++;
+            }
+        }
+
+        assertEquals(7, filter.getHashes());
+        assertTrue("False positive rate " + positives / 100000.0, positives < 2000);
+    }
+}
@@ -0,0 +1,168 @@
+package be.unamur.ct;
+
+
+import be.unamur.ct.decode.model.CertificateChain;
+import be.unamur.ct.decode.model.CertificateNames;
+import be.unamur.ct.decode.model.MerkleTreeLeaf;
+import be.unamur.ct.decode.service.DecodeService;
+import be.unamur.ct.decode.service.DomainFilter;
+import be.unamur.ct.download.client.EntriesParser;
+import be.unamur.ct.download.model.LogEntry;
+import be.unamur.ct.download.model.LogList;
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.asn1.x500.RDN;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x500.style.IETFUtils;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+
+public class CertificateNamesTest {
+
+    private LogList entries;
+
+
+    @Before
+    public void setup() throws IOException {
+        InputStream input = getClass().getClassLoader().getResourceAsStream("json/log.json");
+        entries = new EntriesParser().parse(new ByteArrayInputStream(IOUtils.toByteArray(input)), 0);
+    }
+
+
+    private DomainFilter filter(String... suffixes) {
+        DomainFilter filter = new DomainFilter();
+        ReflectionTestUtils.setField(filter, "suffixes", suffixes);
+        filter.start();
+        return filter;
+    }
+
+
+    private List<String> parsedNames(X509CertificateHolder holder) {
+        List<String> names = new ArrayList<>();
+        for (RDN cn : holder.getSubject().getRDNs(BCStyle.CN)) {
+            names.add("CN=" + IETFUtils.valueToString(cn.getFirst().getValue()));
+        }
+
+        GeneralNames sans = GeneralNames.fromExtensions(holder.getExtensions(), Extension.subjectAlternativeName);
+        if (sans != null) {
+            for (GeneralName name : sans.getNames()) {
+                if (name.getTagNo() == GeneralName.dNSName) {
+                    names.add("DNS=" + name.getName().toString());
+                }
+            }
+        }
+        return names;
+    }
+
+
+    private List<String> scannedNames(CertificateNames names) {
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            list.add((names.isCommonName(i) ? "CN=" : "DNS=") + names.getName(i));
+        }
+        return list;
+    }
+
+
+    @Test
+    public void testNamesOfChains() throws IOException {
+        int certificates = 0;
+        for (LogEntry entry : entries) {
+            MerkleTreeLeaf leaf = MerkleTreeLeaf.parse(entry.getLeafInput());
+            CertificateChain chain = CertificateChain.parse(entry.getExtraData(), leaf.getEntryType());
+
+            for (int i = 0; i < chain.size(); i++) {
+                X509CertificateHolder holder = DecodeService.certificateHolder(chain.getData(), chain.getOffset(i),
+                        chain.getLength(i));
+                CertificateNames names = CertificateNames.parse(chain.getData(), chain.getOffset(i),
+                        chain.getLength(i), false);
+
+                assertThat(names.isComplete()).isTrue();
+                assertThat(scannedNames(names)).isEqualTo(parsedNames(holder));
+                certificates++;
+            }
+        }
+        assertThat(certificates).isGreaterThan(0);
+    }
+
+
+    @Test
+    public void testNamesOfLeaves() throws IOException {
+        MerkleTreeLeaf leaf = MerkleTreeLeaf.parse(entries.get(1).getLeafInput());
+        X509CertificateHolder holder = DecodeService.certificateHolder(leaf.getData(), leaf.getCertificateOffset(),
+                leaf.getCertificateLength());
+        CertificateNames names = CertificateNames.parse(leaf.getData(), leaf.getCertificateOffset(),
+                leaf.getCertificateLength(), false);
+
+        assertThat(names.size()).isGreaterThan(1);
+        assertThat(scannedNames(names)).isEqualTo(parsedNames(holder));
+
+        // A precertificate entry holds a TBSCertificate, the precertificate as submitted holds the same names
+        leaf = MerkleTreeLeaf.parse(entries.get(0).getLeafInput());
+        CertificateChain chain = CertificateChain.parse(entries.get(0).getExtraData(), leaf.getEntryType());
+        holder = DecodeService.certificateHolder(chain.getData(), chain.getPrecertificateOffset(),
+                chain.getPrecertificateLength());
+        names = CertificateNames.parse(leaf.getData(), leaf.getCertificateOffset(), leaf.getCertificateLength(), true);
+
+        assertThat(scannedNames(names)).isEqualTo(parsedNames(holder));
+    }
+
+
+    @Test
+    public void testMalformed() {
+        MerkleTreeLeaf leaf = MerkleTreeLeaf.parse(entries.get(1).getLeafInput());
+
+        assertThatThrownBy(() -> CertificateNames.parse(leaf.getData(), leaf.getCertificateOffset(), 100, false))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> CertificateNames.parse(leaf.getData(), leaf.getCertificateOffset(),
+                leaf.getCertificateLength(), true))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+
+    @Test
+    public void testDomainFilter() {
+        MerkleTreeLeaf leaf = MerkleTreeLeaf.parse(entries.get(1).getLeafInput());
+        CertificateNames names = CertificateNames.parse(leaf.getData(), leaf.getCertificateOffset(),
+                leaf.getCertificateLength(), false);
+        String name = names.getName(names.size() - 1);
+        String suffix = name.substring(name.lastIndexOf('.')).toUpperCase();
+
+        // The last name is a subject alternative name, found whatever the common name
+        DomainFilter matching = filter(suffix);
+        assertThat(matching.matches(name)).isTrue();
+        assertThat(matching.wantedNames(leaf.getData(), leaf.getCertificateOffset(), leaf.getCertificateLength(),
+                false)).contains(name.toLowerCase());
+
+        // A zone matches the name itself and its subdomains
+        DomainFilter zone = filter(name);
+        assertThat(zone.wantedNames(leaf.getData(), leaf.getCertificateOffset(), leaf.getCertificateLength(),
+                false)).contains(name.toLowerCase()).allMatch(n -> n.endsWith(name.toLowerCase()));
+
+        DomainFilter other = filter(".be", ".vlaanderen", ".brussels");
+        assertThat(other.matches("www.unamur.be")).isTrue();
+        assertThat(other.matches("WWW.UNAMUR.BE")).isTrue();
+        assertThat(other.matches("www.example.com")).isFalse();
+        assertThat(other.wantedNames(leaf.getData(), leaf.getCertificateOffset(), leaf.getCertificateLength(),
+                false).isEmpty()).isEqualTo(!other.matches(name));
+
+        // Certificates that cannot be read are passed on to be parsed
+        assertThat(other.wantedNames(leaf.getData(), leaf.getCertificateOffset(), 100, false)).isNull();
+        assertThat(other.getChecked()).isEqualTo(2);
+        assertThat(other.getPassed()).isEqualTo(other.matches(name) ? 2 : 1);
+    }
+}
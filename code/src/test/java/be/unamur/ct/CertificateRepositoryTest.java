@@ -9,6 +9,7 @@ import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.junit4.SpringRunner;
 
@@ -125,4 +126,31 @@ public class CertificateRepositoryTest {
             assertFalse(vatNotSearched.contains(c));
         }
     }
+
+
+    @Test
+    public void testFingerprints(){
+        Certificate cert = new Certificate("www.test.be");
+        cert.setFingerprint("00ff");
+        cert = certificateDao.save(cert);
+
+        assertTrue(certificateDao.existsByFingerprint("00ff"));
+        assertFalse(certificateDao.existsByFingerprint("ff00"));
+
+        List<Object[]> fingerprints = certificateDao.findFingerprints(0, PageRequest.of(0, 10));
+        assertEquals(1, fingerprints.size());
+        assertEquals(cert.getId(), ((Number) fingerprints.get(0)[0]).longValue());
+        assertEquals("00ff", fingerprints.get(0)[1]);
+        assertTrue(certificateDao.findFingerprints(cert.getId(), PageRequest.of(0, 10)).isEmpty());
+
+
+        Certificate duplicate = new Certificate("www.test.be");
+        duplicate.setFingerprint("00ff");
+        try {
+            certificateDao.save(duplicate);
+            entityManager.flush();
+            fail("Duplicate fingerprint saved");
+        } catch (DataIntegrityViolationException e) {
+        }
+    }
 }
@@ -0,0 +1,100 @@
+package be.unamur.ct;
+
+
+import be.unamur.ct.data.dao.CertificateDao;
+import be.unamur.ct.decode.model.Certificate;
+import be.unamur.ct.decode.service.DecodeContext;
+import be.unamur.ct.decode.service.DecodeService;
+import be.unamur.ct.decode.service.DedupeService;
+import be.unamur.ct.decode.service.DomainFilter;
+import be.unamur.ct.decode.service.IssuerCache;
+import be.unamur.ct.download.client.EntriesParser;
+import be.unamur.ct.download.model.LogEntry;
+import be.unamur.ct.download.model.LogList;
+import be.unamur.ct.scrap.service.VATScrapper;
+import be.unamur.ct.thread.ThreadPool;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class DecodeBatchTest {
+
+    private LogList entries;
+    private DecodeService decodeService;
+    private CertificateDao certificateDao;
+    private DedupeService dedupeService;
+
+
+    @Before
+    public void setup() throws IOException {
+        InputStream input = getClass().getClassLoader().getResourceAsStream("json/log.json");
+        entries = new EntriesParser().parse(new ByteArrayInputStream(IOUtils.toByteArray(input)), 0);
+
+        new ThreadPool().setThreadsScrap(1);
+
+        DomainFilter domainFilter = new DomainFilter();
+        ReflectionTestUtils.setField(domainFilter, "suffixes", new String[]{".be"});
+        domainFilter.start();
+
+        certificateDao = Mockito.mock(CertificateDao.class);
+        Mockito.when(certificateDao.saveAll(Mockito.anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        dedupeService = Mockito.mock(DedupeService.class);
+        Mockito.when(dedupeService.fingerprint(Mockito.any(), Mockito.anyInt(), Mockito.anyInt()))
+                .thenReturn(new byte[32]);
+
+        decodeService = new DecodeService();
+        ReflectionTestUtils.setField(decodeService, "certificateDao", certificateDao);
+        ReflectionTestUtils.setField(decodeService, "dedupeService", dedupeService);
+        ReflectionTestUtils.setField(decodeService, "domainFilter", domainFilter);
+        ReflectionTestUtils.setField(decodeService, "issuerCache", new IssuerCache(16));
+        ReflectionTestUtils.setField(decodeService, "decodeContext", new DecodeContext());
+        ReflectionTestUtils.setField(decodeService, "vatScrapper", Mockito.mock(VATScrapper.class));
+    }
+
+
+    private LogEntry copy(LogEntry entry, long id) {
+        LogEntry copy = new LogEntry(entry.getLeafInput(), entry.getExtraData());
+        copy.setId(id);
+        return copy;
+    }
+
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCorruptEntry() {
+        // The first certificate decoded fails on the database, as a corrupt entry would fail while being decoded
+        AtomicInteger lookups = new AtomicInteger();
+        Mockito.when(dedupeService.isDuplicate(Mockito.any())).thenAnswer(invocation -> {
+            if (lookups.getAndIncrement() == 0) {
+                throw new DataAccessResourceFailureException("Connection lost");
+            }
+            return false;
+        });
+
+        LogEntry wanted = entries.get(1);
+        LogEntry truncated = new LogEntry(Arrays.copyOf(wanted.getLeafInput(), 20), wanted.getExtraData());
+        truncated.setId(3);
+        decodeService.decodeBatch(Arrays.asList(copy(wanted, 1), truncated, copy(wanted, 2)));
+
+        ArgumentCaptor<List<Certificate>> saved = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(certificateDao).saveAll(saved.capture());
+        assertThat(saved.getValue()).hasSize(1);
+        assertThat(saved.getValue().get(0).getSubject()).isEqualTo("www.vprmedia.be");
+        assertThat(saved.getValue().get(0).getDomains()).isEqualTo("www.vprmedia.be,vprmedia.be");
+    }
+}
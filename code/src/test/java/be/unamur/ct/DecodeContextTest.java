@@ -0,0 +1,48 @@
+package be.unamur.ct;
+
+
+import be.unamur.ct.decode.service.DecodeContext;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.RSASSAPSSparams;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class DecodeContextTest {
+
+    private final DecodeContext decodeContext = new DecodeContext();
+
+
+    @Test
+    public void testAlgorithmNames() {
+        String rsa = decodeContext.algorithmName(
+                new AlgorithmIdentifier(PKCSObjectIdentifiers.sha256WithRSAEncryption, DERNull.INSTANCE));
+        String ecdsa = decodeContext.algorithmName(new AlgorithmIdentifier(X9ObjectIdentifiers.ecdsa_with_SHA256));
+
+        assertThat(rsa).isEqualTo("SHA256WITHRSA");
+        assertThat(ecdsa).isEqualTo("SHA256WITHECDSA");
+        assertThat(decodeContext.algorithmName(new AlgorithmIdentifier(PKCSObjectIdentifiers.sha256WithRSAEncryption)))
+                .isSameAs(rsa);
+        assertThat(decodeContext.getAlgorithms()).isEqualTo(2);
+
+        // Algorithms taking parameters are named from them, and not cached by OID
+        String pss = decodeContext.algorithmName(
+                new AlgorithmIdentifier(PKCSObjectIdentifiers.id_RSASSA_PSS, new RSASSAPSSparams()));
+        assertThat(pss).isNotEqualTo(rsa);
+        assertThat(decodeContext.getAlgorithms()).isEqualTo(2);
+    }
+
+
+    @Test
+    public void testIntern() {
+        String issuer = decodeContext.intern(new String("Let's Encrypt Authority X3"));
+
+        assertThat(decodeContext.intern(new String("Let's Encrypt Authority X3"))).isSameAs(issuer);
+        assertThat(decodeContext.intern(null)).isNull();
+        assertThat(decodeContext.getStrings()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,99 @@
+package be.unamur.ct;
+
+
+import be.unamur.ct.decode.service.DecodeService;
+import be.unamur.ct.decode.thread.DecodeBatchTask;
+import be.unamur.ct.decode.thread.DecodeSpillPolicy;
+import be.unamur.ct.download.model.LogEntry;
+import be.unamur.ct.thread.BlockingPolicy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DecodeQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final int ENTRIES = 200;
+    private static final int BATCH = 4;
+
+
+    private DecodeService slowDecoder(Set<Long> decoded) {
+        DecodeService decodeService = Mockito.mock(DecodeService.class);
+        Mockito.doAnswer(invocation -> {
+            List<LogEntry> entries = invocation.getArgument(0);
+            for (LogEntry entry : entries) {
+                Thread.sleep(1);
+                assertArrayEquals(Long.toString(entry.getId()).getBytes(), entry.getLeafInput());
+                decoded.add(entry.getId());
+            }
+            return null;
+        }).when(decodeService).decodeBatch(Mockito.any());
+        return decodeService;
+    }
+
+
+    private long submitAll(RejectedExecutionHandler policy, Set<Long> decoded) throws InterruptedException {
+        DecodeService decodeService = slowDecoder(decoded);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(10), policy);
+
+        long maxQueue = 0;
+        for (long i = 0; i < ENTRIES; i += BATCH) {
+            List<LogEntry> batch = new ArrayList<>();
+            for (long j = i; j < i + BATCH; j++) {
+                LogEntry entry = new LogEntry(Long.toString(j).getBytes(), new byte[]{1, 2, 3});
+                entry.setId(j);
+                batch.add(entry);
+            }
+            executor.execute(new DecodeBatchTask(batch, decodeService));
+            maxQueue = Math.max(maxQueue, executor.getQueue().size());
+        }
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (decoded.size() < ENTRIES && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        executor.shutdown();
+        return maxQueue;
+    }
+
+
+    @Test
+    public void testBlockingPolicy() throws InterruptedException {
+        Set<Long> decoded = ConcurrentHashMap.newKeySet();
+
+        long maxQueue = submitAll(new BlockingPolicy(), decoded);
+
+
+        assertEquals(ENTRIES, decoded.size());
+        assertTrue(maxQueue <= 10);
+    }
+
+
+    @Test
+    public void testSpillPolicy() throws InterruptedException {
+        Set<Long> decoded = ConcurrentHashMap.newKeySet();
+        DecodeSpillPolicy policy = new DecodeSpillPolicy(folder.getRoot(), BATCH);
+
+        long maxQueue = submitAll(policy, decoded);
+
+
+        assertEquals(ENTRIES, decoded.size());
+        assertTrue(maxQueue <= 10);
+        assertEquals(0, policy.getSpilled());
+    }
+}
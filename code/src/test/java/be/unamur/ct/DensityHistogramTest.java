@@ -0,0 +1,62 @@
+package be.unamur.ct;
+
+
+import be.unamur.ct.download.model.DensityHistogram;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+public class DensityHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        DensityHistogram histogram = new DensityHistogram(1005, 10);
+
+        assertEquals(0, histogram.bucketOf(0));
+        assertEquals(9, histogram.bucketOf(1004));
+        assertEquals(9, histogram.bucketOf(5000));
+        assertEquals(1005, histogram.startOf(10));
+
+        for (int b = 0; b < 10; b++) {
+            assertEquals(b, histogram.bucketOf(histogram.startOf(b)));
+            assertEquals(b, histogram.bucketOf(histogram.startOf(b + 1) - 1));
+        }
+    }
+
+
+    @Test
+    public void testDensity() {
+        DensityHistogram histogram = new DensityHistogram(1000, 10);
+        histogram.record(2, 50, 5);
+        histogram.record(2, 50, 5);
+        histogram.record(3, 100, 50);
+
+        assertEquals(0.1, histogram.getDensity(2), 1e-9);
+        assertEquals(0.0, histogram.getDensity(4), 1e-9);
+        assertEquals(0.3, histogram.getDensity(200, 399), 1e-9);
+        assertEquals(0.5, histogram.getDensity(350, 399), 1e-9);
+        assertEquals(60, histogram.getEstimatedMatches());
+    }
+
+
+    @Test
+    public void testEncodeDecode() {
+        DensityHistogram histogram = new DensityHistogram(123456789, 4);
+        histogram.record(1, 1000, 3);
+        histogram.record(3, 2000, 7);
+
+        String encoded = histogram.encode();
+        DensityHistogram decoded = DensityHistogram.decode(encoded);
+
+        assertEquals("123456789:0/0,1000/3,0/0,2000/7", encoded);
+        assertEquals(encoded, decoded.encode());
+        assertNull(DensityHistogram.decode(null));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeInvalid() {
+        DensityHistogram.decode("12:1/2,x");
+    }
+}
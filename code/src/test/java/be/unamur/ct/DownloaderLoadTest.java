@@ -0,0 +1,462 @@
+package be.unamur.ct;
+
+
+import be.unamur.ct.data.dao.LogRangesDao;
+import be.unamur.ct.data.dao.ServerDao;
+import be.unamur.ct.data.dao.SliceDao;
+import be.unamur.ct.data.service.CheckpointService;
+import be.unamur.ct.decode.service.DecodeService;
+import be.unamur.ct.download.client.LogClient;
+import be.unamur.ct.download.model.DensityHistogram;
+import be.unamur.ct.download.model.LogEntry;
+import be.unamur.ct.download.model.LogList;
+import be.unamur.ct.download.model.Server;
+import be.unamur.ct.download.model.Slice;
+import be.unamur.ct.download.service.LogClientService;
+import be.unamur.ct.download.service.RangeService;
+import be.unamur.ct.download.service.ServerService;
+import be.unamur.ct.download.service.SliceScheduler;
+import be.unamur.ct.spool.service.SpoolService;
+import be.unamur.ct.thread.ThreadPool;
+import ch.qos.logback.classic.Level;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+/*
+ * Downloads a whole simulated log with the ServerService under several fault profiles, and checks that every entry
+ * is decoded exactly once.  The database is replaced by mocks, so these tests do not need a running database.
+ * The throughput of each profile is logged, to compare changes of the download path.
+ */
+public class DownloaderLoadTest {
+
+    private static final long TREE_SIZE = 20000;
+    private static final long TIMEOUT_MS = 60000;
+
+    private Logger logger = LoggerFactory.getLogger(DownloaderLoadTest.class);
+
+    private LogSimulator simulator;
+    private ServerService serverService;
+    private LogClientService logClientService;
+    private RangeService rangeService;
+    private ConcurrentHashMap<Long, Integer> decoded;
+    private Queue<Long> decodeOrder;
+    private SliceScheduler sliceScheduler;
+    private DecodeService decodeService;
+    private AtomicLong resaved;
+
+
+    @BeforeClass
+    public static void setupThreads() {
+        // Without a Spring context, logback logs everything the embedded Jetty server does
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+
+        ThreadPool threadPool = new ThreadPool();
+        threadPool.setThreadsDecode(2);
+        threadPool.setThreadsSlice(4);
+        threadPool.setDecodeQueueCapacity(1000);
+        threadPool.setDecodeBatchSize(100);
+        threadPool.setDecodeQueuePolicy("block");
+    }
+
+
+    @Before
+    public void setup() {
+        simulator = new LogSimulator(TREE_SIZE);
+        simulator.start();
+
+        decoded = new ConcurrentHashMap<>();
+        decodeOrder = new ConcurrentLinkedQueue<>();
+        decodeService = Mockito.mock(DecodeService.class);
+        Mockito.doAnswer(invocation -> {
+            List<LogEntry> entries = invocation.getArgument(0);
+            for (LogEntry entry : entries) {
+                assertThat(LogSimulator.indexOf(entry.getLeafInput())).isEqualTo(entry.getId());
+                decoded.merge(entry.getId(), 1, Integer::sum);
+                decodeOrder.add(entry.getId());
+            }
+            return null;
+        }).when(decodeService).decodeBatch(Mockito.any());
+
+        // Wanted certificates are one entry out of ten in the second quarter of the log, and none elsewhere
+        Mockito.when(decodeService.isWanted(Mockito.any())).thenAnswer(invocation -> {
+            long index = LogSimulator.indexOf(((LogEntry) invocation.getArgument(0)).getLeafInput());
+            return index >= TREE_SIZE / 4 && index < TREE_SIZE / 2 && index % 10 == 0;
+        });
+
+        AtomicLong ids = new AtomicLong();
+        resaved = new AtomicLong();
+        SliceDao sliceDao = Mockito.mock(SliceDao.class);
+        Mockito.when(sliceDao.save(Mockito.any())).thenAnswer(invocation -> {
+            Slice slice = invocation.getArgument(0);
+            if (slice.getId() == 0) {
+                slice.setId(ids.incrementAndGet());
+            } else {
+                resaved.incrementAndGet();
+            }
+            return slice;
+        });
+
+        logClientService = new LogClientService();
+        ReflectionTestUtils.setField(logClientService, "maxRequestsPerLog", 8);
+        ReflectionTestUtils.setField(logClientService, "keepAliveSeconds", 60L);
+        ReflectionTestUtils.setField(logClientService, "minRate", 5.0);
+        ReflectionTestUtils.setField(logClientService, "maxRate", 500.0);
+        ReflectionTestUtils.setField(logClientService, "baseBackoff", 20L);
+        ReflectionTestUtils.setField(logClientService, "maxBackoff", 500L);
+
+        CheckpointService checkpointService = Mockito.mock(CheckpointService.class);
+        sliceScheduler = new SliceScheduler();
+        ReflectionTestUtils.setField(sliceScheduler, "sliceDao", sliceDao);
+        ReflectionTestUtils.setField(sliceScheduler, "logClientService", logClientService);
+        ReflectionTestUtils.setField(sliceScheduler, "minSliceSize", 1000L);
+        ReflectionTestUtils.setField(sliceScheduler, "checkpointService", checkpointService);
+
+        rangeService = new RangeService();
+        ReflectionTestUtils.setField(rangeService, "logRangesDao", Mockito.mock(LogRangesDao.class));
+        ReflectionTestUtils.setField(rangeService, "sliceDao", sliceDao);
+        ReflectionTestUtils.setField(rangeService, "serverDao", Mockito.mock(ServerDao.class));
+
+        serverService = new ServerService();
+        ReflectionTestUtils.setField(serverService, "rangeService", rangeService);
+        ReflectionTestUtils.setField(serverService, "serverDao", Mockito.mock(ServerDao.class));
+        ReflectionTestUtils.setField(serverService, "sliceDao", sliceDao);
+        ReflectionTestUtils.setField(serverService, "decodeService", decodeService);
+        ReflectionTestUtils.setField(serverService, "logClientService", logClientService);
+        ReflectionTestUtils.setField(serverService, "sliceScheduler", sliceScheduler);
+        ReflectionTestUtils.setField(serverService, "checkpointService", checkpointService);
+        ReflectionTestUtils.setField(serverService, "spoolService", Mockito.mock(SpoolService.class));
+        ReflectionTestUtils.setField(serverService, "entriesPerRequest", 1000L);
+        ReflectionTestUtils.setField(serverService, "pipelineDepth", 4);
+        ReflectionTestUtils.setField(serverService, "maxAttempts", 20);
+        ReflectionTestUtils.setField(serverService, "sampleBuckets", 20);
+        ReflectionTestUtils.setField(serverService, "samplePages", 2);
+    }
+
+
+    @After
+    public void tearDown() {
+        simulator.stop();
+    }
+
+
+    private Server simulatedServer() {
+        Server server = new Server(simulator.getUrl(), "Simulator");
+        server.setId(1);
+        return server;
+    }
+
+
+    /*
+     * Downloads the whole log as a single slice and waits until every entry is decoded and no retry is left
+     * Returns the number of entries downloaded per second
+     */
+    private long download() throws InterruptedException {
+        return download(simulatedServer());
+    }
+
+
+    private long download(Server server) throws InterruptedException {
+        long throughput = download(server, 0, TREE_SIZE - 1, TREE_SIZE);
+
+        assertThat(rangeService.get(server).gaps(0, TREE_SIZE - 1)).isEmpty();
+        return throughput;
+    }
+
+
+    /*
+     * Downloads the entries from start to end as a single slice and waits until the expected number of entries is
+     * decoded and no retry is left
+     * Returns the number of entries downloaded per second
+     */
+    private long download(Server server, long first, long last, long expected) throws InterruptedException {
+        Slice slice = new Slice(first, last, first, server);
+        if (server.isNewestFirst()) {
+            slice.setNext(last + 1);
+            slice.setDescending(true);
+        }
+
+        long start = System.currentTimeMillis();
+        long deadline = start + TIMEOUT_MS;
+        serverService.searchSlice(slice);
+
+        ThreadPoolExecutor sliceExecutor = (ThreadPoolExecutor) ThreadPool.getSliceExecutor();
+        while ((decoded.size() < expected || sliceExecutor.getActiveCount() > 0 || !sliceExecutor.getQueue().isEmpty())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        long throughput = decoded.size() * 1000 / elapsed;
+
+        logger.info(simulator + ", " + logClientService.getClients() + ": " + throughput + " entries/s");
+
+        assertThat(decoded).hasSize((int) expected);
+        assertThat(decoded.values()).containsOnly(1);
+
+        // Slices being downloaded, split or not, are only saved through the CheckpointService
+        assertThat(resaved.get()).isEqualTo(0);
+        return throughput;
+    }
+
+
+    @Test
+    public void testNoFault() throws InterruptedException {
+        assertThat(download()).isGreaterThan(0);
+        assertThat(simulator.getServed()).isEqualTo(TREE_SIZE);
+
+        // Requests share the connections of the client of the log instead of opening one each
+        LogClient client = logClientService.getClient(simulatedServer());
+        assertThat(client.getRequests()).isGreaterThanOrEqualTo(TREE_SIZE / 1000);
+        assertThat(client.getConnections()).isBetween(1L, 8L);
+        assertThat(client.getReusedConnections()).isGreaterThanOrEqualTo(client.getRequests() - 8);
+        assertThat(client.getHandshakes()).isEqualTo(0);
+    }
+
+
+    @Test
+    public void testLatency() throws InterruptedException {
+        simulator.setLatency(50);
+
+        download();
+        assertThat(simulator.getServed()).isEqualTo(TREE_SIZE);
+    }
+
+
+    @Test
+    public void testPageCap() throws InterruptedException {
+        simulator.setPageCap(256);
+
+        download();
+        assertThat(simulator.getServed()).isEqualTo(TREE_SIZE);
+    }
+
+
+    @Test
+    public void testThrottled() throws InterruptedException {
+        simulator.setPageCap(256);
+        simulator.setThrottleRate(0.2);
+
+        download();
+        assertThat(simulator.getThrottled()).isGreaterThan(0);
+    }
+
+
+    @Test
+    public void testTruncatedPages() throws InterruptedException {
+        simulator.setPageCap(256);
+        simulator.setTruncateRate(0.3);
+
+        download();
+        assertThat(simulator.getTruncated()).isGreaterThan(0);
+        assertThat(simulator.getServed()).isEqualTo(TREE_SIZE);
+    }
+
+
+    @Test
+    public void testConnectionResets() throws InterruptedException {
+        simulator.setPageCap(256);
+        simulator.setResetRate(0.1);
+
+        download();
+        assertThat(simulator.getResets()).isGreaterThan(0);
+    }
+
+
+    @Test
+    public void testAllFaults() throws InterruptedException {
+        simulator.setLatency(10);
+        simulator.setPageCap(512);
+        simulator.setThrottleRate(0.05);
+        simulator.setResetRate(0.05);
+        simulator.setTruncateRate(0.1);
+
+        download();
+    }
+
+
+    @Test
+    public void testSpoolFailure() throws InterruptedException, IOException {
+        // The spool fails halfway through every page: only the entries not spooled are decoded right away
+        SpoolService spoolService = Mockito.mock(SpoolService.class);
+        Mockito.when(spoolService.isEnabled()).thenReturn(true);
+        Mockito.when(spoolService.append(Mockito.any(), Mockito.anyInt())).thenAnswer(invocation -> {
+            LogList entries = invocation.getArgument(0);
+            int written = (int) invocation.getArgument(1) / 2;
+            for (int i = 0; i < written; i++) {
+                decoded.merge(entries.get(i).getId(), 1, Integer::sum);
+            }
+            return written;
+        });
+        ReflectionTestUtils.setField(serverService, "spoolService", spoolService);
+
+        download();
+    }
+
+
+    @Test
+    public void testSpoolInterrupted() throws IOException {
+        // A thread interrupted while the spool is full stops its slice, nothing is decoded around the spool
+        SpoolService spoolService = Mockito.mock(SpoolService.class);
+        Mockito.when(spoolService.isEnabled()).thenReturn(true);
+        Mockito.when(spoolService.append(Mockito.any(), Mockito.anyInt()))
+                .thenThrow(new InterruptedIOException("Interrupted while waiting for the spool to be consumed"));
+        ReflectionTestUtils.setField(serverService, "spoolService", spoolService);
+
+        Slice slice = new Slice(0, TREE_SIZE - 1, 0, simulatedServer());
+        serverService.searchSlice(slice);
+
+
+        assertThat(Thread.interrupted()).isTrue();
+        assertThat(slice.getNext()).isEqualTo(0);
+        Mockito.verify(spoolService, Mockito.times(1)).append(Mockito.any(), Mockito.anyInt());
+        Mockito.verify(decodeService, Mockito.after(200).never()).decodeBatch(Mockito.any());
+    }
+
+
+    @Test
+    public void testFindIndex() throws IOException {
+        simulator.setTimestampStep(1000);
+        simulator.setTimestampJitter(400);
+        Server server = simulatedServer();
+        long first = LogSimulator.getFirstTimestamp();
+
+        assertThat(serverService.findIndex(server, TREE_SIZE, first - 1000)).isEqualTo(0);
+        assertThat(serverService.findIndex(server, TREE_SIZE, first + TREE_SIZE * 1000)).isEqualTo(TREE_SIZE);
+        assertThat(serverService.findIndex(server, TREE_SIZE, first + 5000 * 1000 - 500)).isEqualTo(5000);
+        assertThat(simulator.getRequests()).isLessThan(50);
+    }
+
+
+    @Test
+    public void testIngestBounds() throws IOException, InterruptedException {
+        simulator.setTimestampStep(1000);
+        simulator.setTimestampJitter(3000);
+        ReflectionTestUtils.setField(serverService, "ingestMargin", 5000L);
+
+        Server server = simulatedServer();
+        long first = LogSimulator.getFirstTimestamp();
+        server.setIngestAfter(new Date(first + 5000 * 1000));
+        server.setIngestBefore(new Date(first + 7000 * 1000));
+
+        Set<Long> expected = new HashSet<>();
+        for (long i = 0; i < TREE_SIZE; i++) {
+            if (server.accepts(simulator.timestampOf(i))) {
+                expected.add(i);
+            }
+        }
+
+        long[] window = serverService.ingestWindow(server, TREE_SIZE);
+        assertThat(window[0]).isBetween(4990L, 5000L);
+        assertThat(window[1]).isBetween(7000L, 7010L);
+
+        download(server, window[0], window[1] - 1, expected.size());
+        assertThat(decoded.keySet()).isEqualTo(expected);
+    }
+
+
+    @Test
+    public void testNewestFirst() throws InterruptedException {
+        simulator.setPageCap(256);
+        simulator.setTruncateRate(0.2);
+        simulator.setResetRate(0.05);
+        Server server = simulatedServer();
+        server.setNewestFirst(true);
+
+        download(server);
+        assertThat(simulator.getResets()).isGreaterThan(0);
+
+        // The first entries decoded are the newest ones
+        assertThat(decodeOrder.peek()).isGreaterThanOrEqualTo(TREE_SIZE - 4 * 1000);
+    }
+
+
+    @Test
+    public void testSample() {
+        simulator.setPageCap(100);
+        simulator.setResetRate(0.05);
+        Server server = simulatedServer();
+
+        DensityHistogram histogram = serverService.sample(server);
+
+        assertThat(histogram.getBuckets()).isEqualTo(20);
+        assertThat(histogram.getSampled()).isGreaterThan(20 * 100);
+        assertThat(histogram.getDensity(0, TREE_SIZE / 4 - 1)).isEqualTo(0);
+        assertThat(histogram.getDensity(TREE_SIZE / 4, TREE_SIZE / 2 - 1)).isBetween(0.08, 0.12);
+        assertThat(histogram.getEstimatedMatches()).isBetween(400L, 600L);
+        assertThat(server.getDensityHistogram().encode()).isEqualTo(histogram.encode());
+    }
+
+
+    @Test
+    public void testFairQueuing() throws InterruptedException {
+        LogSimulator other = new LogSimulator(TREE_SIZE);
+        other.start();
+        try {
+            Server first = simulatedServer();
+            Server second = new Server(other.getUrl(), "Other simulator");
+            second.setId(2);
+
+            // Pages downloaded from each server, in the order they were received
+            Queue<long[]> pages = new ConcurrentLinkedQueue<>();
+            ReflectionTestUtils.setField(sliceScheduler, "maxSliceSize", 1000L);
+            SliceScheduler scheduler = Mockito.spy(sliceScheduler);
+            Mockito.doAnswer(invocation -> {
+                pages.add(new long[]{((Server) invocation.getArgument(0)).getId(), invocation.getArgument(1)});
+                return invocation.callRealMethod();
+            }).when(scheduler).record(Mockito.any(), Mockito.anyLong());
+            ReflectionTestUtils.setField(serverService, "sliceScheduler", scheduler);
+
+            // The second server is started once every slice of the first one is queued
+            for (Server server : new Server[]{first, second}) {
+                long step = scheduler.planSliceSize(TREE_SIZE);
+                for (long start = 0; start < TREE_SIZE; start += step) {
+                    ReflectionTestUtils.invokeMethod(serverService, "queueSlice",
+                            new Slice(start, Math.min(start + step, TREE_SIZE) - 1, start, server));
+                }
+            }
+
+            ThreadPoolExecutor sliceExecutor = (ThreadPoolExecutor) ThreadPool.getSliceExecutor();
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while ((decoded.values().stream().mapToInt(Integer::intValue).sum() < 2 * TREE_SIZE
+                    || sliceExecutor.getActiveCount() > 0 || !sliceExecutor.getQueue().isEmpty())
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(decoded).hasSize((int) TREE_SIZE);
+            assertThat(decoded.values()).containsOnly(2);
+
+            // The slices of both servers are interleaved: when the first server is done, the second one is well advanced
+            long[] downloaded = new long[3];
+            for (long[] page : pages) {
+                downloaded[(int) page[0]] += page[1];
+                if (downloaded[1] >= TREE_SIZE) {
+                    break;
+                }
+            }
+            assertThat(downloaded[2]).isGreaterThanOrEqualTo(TREE_SIZE / 2);
+            assertThat(scheduler.getVirtualTime()).isGreaterThan(0);
+        } finally {
+            other.stop();
+        }
+    }
+}
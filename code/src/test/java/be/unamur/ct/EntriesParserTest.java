@@ -0,0 +1,98 @@
+package be.unamur.ct;
+
+
+import be.unamur.ct.download.client.EntriesParser;
+import be.unamur.ct.download.model.LogEntry;
+import be.unamur.ct.download.model.LogList;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.util.encoders.Base64;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class EntriesParserTest {
+
+    private EntriesParser parser;
+
+    private byte[] json;
+
+
+    @Before
+    public void setup() throws IOException {
+        parser = new EntriesParser();
+
+        InputStream input = getClass().getClassLoader().getResourceAsStream("json/log.json");
+        json = IOUtils.toByteArray(input);
+    }
+
+
+    @Test
+    public void testParse() throws IOException {
+        LogList list = parser.parse(new ByteArrayInputStream(json), 42);
+
+        JsonNode expected = new ObjectMapper().readTree(json).get("entries");
+
+        assertThat(list.size()).isEqualTo(expected.size());
+
+        for (int i = 0; i < list.size(); i++) {
+            LogEntry entry = list.get(i);
+
+            assertThat(entry.getId()).isEqualTo(42 + i);
+            assertThat(entry.getLeafInput()).isEqualTo(Base64.decode(expected.get(i).get("leaf_input").asText()));
+            assertThat(entry.getExtraData()).isEqualTo(Base64.decode(expected.get(i).get("extra_data").asText()));
+        }
+    }
+
+
+    @Test
+    public void testParseEmpty() throws IOException {
+        LogList list = parser.parse(new ByteArrayInputStream("{\"entries\":[]}".getBytes(Charset.forName("UTF-8"))), 0);
+
+        assertThat(list.size()).isEqualTo(0);
+    }
+
+
+    @Test(expected = IOException.class)
+    public void testParseTruncated() throws IOException {
+        parser.parse(new ByteArrayInputStream(json, 0, json.length / 2), 0);
+    }
+
+
+    @Test(expected = IOException.class)
+    public void testParseMissingField() throws IOException {
+        String missing = "{\"entries\":[{\"leaf_input\":\"AAAA\"}]}";
+        parser.parse(new ByteArrayInputStream(missing.getBytes(Charset.forName("UTF-8"))), 0);
+    }
+
+
+    @Test
+    public void testParseAllConcatenated() throws IOException {
+        byte[] twice = new byte[json.length * 2 + 1];
+        System.arraycopy(json, 0, twice, 0, json.length);
+        twice[json.length] = '\n';
+        System.arraycopy(json, 0, twice, json.length + 1, json.length);
+
+        LogList expected = parser.parse(new ByteArrayInputStream(json), 0);
+        List<LogEntry> entries = new ArrayList<>();
+        long count = parser.parseAll(new ByteArrayInputStream(twice), 100, entries::add);
+
+        assertThat(count).isEqualTo(expected.size() * 2);
+        assertThat(entries).hasSize(expected.size() * 2);
+
+        for (int i = 0; i < entries.size(); i++) {
+            assertThat(entries.get(i).getId()).isEqualTo(100 + i);
+            assertThat(entries.get(i).getLeafInput()).isEqualTo(expected.get(i % expected.size()).getLeafInput());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package be.unamur.ct;
+
+
+import be.unamur.ct.decode.service.DecodeService;
+import be.unamur.ct.download.model.ImportJob;
+import be.unamur.ct.download.model.LogEntry;
+import be.unamur.ct.download.service.ImportService;
+import be.unamur.ct.thread.ThreadPool;
+import org.apache.commons.io.IOUtils;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class ImportServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+
+    @BeforeClass
+    public static void setupThreads() {
+        ThreadPool threadPool = new ThreadPool();
+        threadPool.setThreadsDecode(2);
+        threadPool.setDecodeQueueCapacity(1000);
+        threadPool.setDecodeBatchSize(2);
+        threadPool.setDecodeQueuePolicy("block");
+    }
+
+
+    @Test
+    public void testStartIndex() {
+        assertEquals(1000, ImportService.startIndex(new File("entries-1000-1999.json.gz")));
+        assertEquals(1000, ImportService.startIndex(new File("argon2019-entries-1000-1999.json")));
+        assertEquals(5000, ImportService.startIndex(new File("dump/2019/log2-5000.json")));
+        assertEquals(42, ImportService.startIndex(new File("42.json.gz")));
+
+
+        assertEquals(-1, ImportService.startIndex(new File("argon2019-entries.json")));
+        assertEquals(-1, ImportService.startIndex(new File("entries-1000.json.bak")));
+    }
+
+
+    @Test
+    public void testImportFile() throws IOException, InterruptedException {
+        // The 3 entries of the file are queued as a full batch of 2 entries, then as the last batch of 1 entry
+        File file = folder.newFile("log2019-entries-700-702.json");
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("json/log.json");
+             OutputStream out = new FileOutputStream(file)) {
+            IOUtils.copy(in, out);
+        }
+
+        Set<Long> decoded = ConcurrentHashMap.newKeySet();
+        DecodeService decodeService = Mockito.mock(DecodeService.class);
+        Mockito.doAnswer(invocation -> {
+            List<LogEntry> entries = invocation.getArgument(0);
+            entries.forEach(entry -> decoded.add(entry.getId()));
+            return null;
+        }).when(decodeService).decodeBatch(Mockito.any());
+
+        ImportService importService = new ImportService();
+        ReflectionTestUtils.setField(importService, "decodeService", decodeService);
+        ImportJob job = new ImportJob(file.getPath(), 1);
+        importService.importFile(file, job);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (decoded.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+
+        assertTrue(job.isDone());
+        assertEquals(3, job.getEntries());
+        assertEquals(0, job.getErrors());
+        assertEquals(3, decoded.size());
+        assertTrue(decoded.containsAll(Arrays.asList(700L, 701L, 702L)));
+        Mockito.verify(decodeService, Mockito.times(2)).decodeBatch(Mockito.any());
+    }
+}
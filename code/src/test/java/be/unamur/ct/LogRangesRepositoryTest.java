@@ -0,0 +1,63 @@
+package be.unamur.ct;
+
+
+import be.unamur.ct.data.dao.LogRangesDao;
+import be.unamur.ct.download.model.LogRanges;
+import be.unamur.ct.download.model.RangeSet;
+import be.unamur.ct.download.model.Server;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest
+public class LogRangesRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private LogRangesDao logRangesDao;
+
+    private Server server;
+
+    @Before
+    public void setupDatabase(){
+
+        server = new Server("http://test.com/", "Test Server");
+
+        server = entityManager.persist(server);
+
+        entityManager.flush();
+    }
+
+
+    @Test
+    public void testFindByServerId(){
+        RangeSet set = new RangeSet();
+        set.add(0, 999);
+        set.add(2000, 2999);
+
+        LogRanges ranges = new LogRanges(server);
+        ranges.setRanges(set.toBytes());
+        ranges.setEntries(set.getCount());
+        logRangesDao.save(ranges);
+        entityManager.flush();
+        entityManager.clear();
+
+        LogRanges found = logRangesDao.findByServerId(server.getId());
+        LogRanges none = logRangesDao.findByServerId(server.getId() + 1);
+
+
+        assertNotNull(found);
+        assertNull(none);
+        assertEquals(2000, found.getEntries().longValue());
+        assertEquals(set.toString(), RangeSet.fromBytes(found.getRanges()).toString());
+    }
+}
@@ -0,0 +1,240 @@
+package be.unamur.ct;
+
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+
+/*
+ * Local Certificate Transparency log serving the get-sth and get-entries endpoints of RFC 6962 with synthetic entries.
+ * Every entry is a MerkleTreeLeaf holding an X509 entry whose certificate is the index of the entry on 8 bytes, so that
+ * tests can check which entries were downloaded with indexOf.  Timestamps of the entries grow by a fixed step, shifted
+ * by a random jitter like the timestamps of a real log, which only roughly increase with the index.
+ * Faults are injected at random, with a fixed seed, in the following order:
+ *  - throttle: the request is answered with HTTP 429
+ *  - reset: the connection is closed without any response
+ *  - truncate: fewer entries than asked are returned, at least one
+ * Every get-entries response is delayed by the latency and holds at most pageCap entries, like real logs.
+ */
+public class LogSimulator extends ResponseDefinitionTransformer {
+
+    private static final int CERTIFICATE_OFFSET = 15;
+    private static final long FIRST_TIMESTAMP = 1583354829162L;
+
+    private final long treeSize;
+    private final Random random = new Random(42);
+    private WireMockServer wireMockServer;
+
+    private int latency = 0;
+    private int pageCap = 1000;
+    private double throttleRate = 0;
+    private double resetRate = 0;
+    private double truncateRate = 0;
+    private long timestampStep = 0;
+    private long timestampJitter = 0;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+    private final AtomicLong truncated = new AtomicLong();
+
+
+    public LogSimulator(long treeSize) {
+        this.treeSize = treeSize;
+    }
+
+
+    public void start() {
+        wireMockServer = new WireMockServer(options().dynamicPort().containerThreads(32).extensions(this));
+        wireMockServer.stubFor(get(urlPathEqualTo("/ct/v1/get-sth")).willReturn(aResponse()));
+        wireMockServer.stubFor(get(urlPathEqualTo("/ct/v1/get-entries")).willReturn(aResponse()));
+        wireMockServer.start();
+    }
+
+
+    public void stop() {
+        wireMockServer.stop();
+    }
+
+
+    public String getUrl() {
+        return "http://localhost:" + wireMockServer.port() + "/";
+    }
+
+
+    @Override
+    public ResponseDefinition transform(Request request, ResponseDefinition responseDefinition, FileSource files,
+                                        Parameters parameters) {
+        if (request.getUrl().startsWith("/ct/v1/get-sth")) {
+            return json(responseDefinition, "{\"tree_size\":" + treeSize + ",\"timestamp\":1583354829162,"
+                    + "\"sha256_root_hash\":\"\",\"tree_head_signature\":\"\"}");
+        }
+
+        requests.incrementAndGet();
+        long start = Long.parseLong(request.queryParameter("start").firstValue());
+        long end = Math.min(Long.parseLong(request.queryParameter("end").firstValue()), treeSize - 1);
+        if (start > end) {
+            return ResponseDefinitionBuilder.like(responseDefinition).withStatus(400).build();
+        }
+        end = Math.min(end, start + pageCap - 1);
+
+        double roll;
+        synchronized (random) {
+            roll = random.nextDouble();
+            if (roll >= throttleRate + resetRate && roll < throttleRate + resetRate + truncateRate) {
+                end = start + random.nextInt((int) (end - start + 1));
+            }
+        }
+
+        if (roll < throttleRate) {
+            throttled.incrementAndGet();
+            return ResponseDefinitionBuilder.like(responseDefinition).withStatus(429).withFixedDelay(latency).build();
+        }
+        if (roll < throttleRate + resetRate) {
+            resets.incrementAndGet();
+            return ResponseDefinitionBuilder.like(responseDefinition).withFault(Fault.EMPTY_RESPONSE).build();
+        }
+        if (roll < throttleRate + resetRate + truncateRate) {
+            truncated.incrementAndGet();
+        }
+
+        StringBuilder body = new StringBuilder("{\"entries\":[");
+        for (long i = start; i <= end; i++) {
+            body.append(i > start ? "," : "")
+                    .append("{\"leaf_input\":\"").append(Base64.getEncoder().encodeToString(leaf(i)))
+                    .append("\",\"extra_data\":\"AAAA\"}");
+        }
+        body.append("]}");
+        served.addAndGet(end - start + 1);
+
+        return ResponseDefinitionBuilder.like(json(responseDefinition, body.toString())).withFixedDelay(latency).build();
+    }
+
+
+    private static ResponseDefinition json(ResponseDefinition responseDefinition, String body) {
+        return ResponseDefinitionBuilder.like(responseDefinition)
+                .withStatus(200)
+                .withHeader("Content-Type", "application/json")
+                .withBody(body)
+                .build();
+    }
+
+
+    /*
+     * MerkleTreeLeaf: version, leaf type, timestamp, entry type, certificate length and certificate
+     */
+    byte[] leaf(long index) {
+        ByteBuffer leaf = ByteBuffer.allocate(CERTIFICATE_OFFSET + 8 + 2);
+        leaf.put((byte) 0).put((byte) 0).putLong(timestampOf(index)).putShort((short) 0);
+        leaf.put((byte) 0).putShort((short) 8);
+        leaf.putLong(index);
+        leaf.putShort((short) 0);
+        return leaf.array();
+    }
+
+
+    /*
+     * The jitter of an entry only depends on its index, so that the same entry always has the same timestamp
+     */
+    long timestampOf(long index) {
+        long jitter = timestampJitter == 0 ? 0 : new Random(index).nextLong() % timestampJitter;
+        return FIRST_TIMESTAMP + index * timestampStep + jitter;
+    }
+
+
+    static long getFirstTimestamp() {
+        return FIRST_TIMESTAMP;
+    }
+
+
+    static long indexOf(byte[] leafInput) {
+        return ByteBuffer.wrap(leafInput, CERTIFICATE_OFFSET, 8).getLong();
+    }
+
+
+    @Override
+    public String getName() {
+        return "ct-log-simulator";
+    }
+
+    public void setLatency(int latency) {
+        this.latency = latency;
+    }
+
+    public void setPageCap(int pageCap) {
+        this.pageCap = pageCap;
+    }
+
+    public void setThrottleRate(double throttleRate) {
+        this.throttleRate = throttleRate;
+    }
+
+    public void setResetRate(double resetRate) {
+        this.resetRate = resetRate;
+    }
+
+    public void setTruncateRate(double truncateRate) {
+        this.truncateRate = truncateRate;
+    }
+
+    public void setTimestampStep(long timestampStep) {
+        this.timestampStep = timestampStep;
+    }
+
+    public void setTimestampJitter(long timestampJitter) {
+        this.timestampJitter = timestampJitter;
+    }
+
+    public long getTreeSize() {
+        return treeSize;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getServed() {
+        return served.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    public long getResets() {
+        return resets.get();
+    }
+
+    public long getTruncated() {
+        return truncated.get();
+    }
+
+    @Override
+    public String toString() {
+        return "LogSimulator{" +
+                "treeSize=" + treeSize +
+                ", requests=" + requests +
+                ", served=" + served +
+                ", throttled=" + throttled +
+                ", resets=" + resets +
+                ", truncated=" + truncated +
+                '}';
+    }
+}
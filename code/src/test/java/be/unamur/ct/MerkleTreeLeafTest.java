@@ -0,0 +1,165 @@
+package be.unamur.ct;
+
+
+import be.unamur.ct.decode.exceptions.NotAValidDomainException;
+import be.unamur.ct.decode.model.CertificateChain;
+import be.unamur.ct.decode.model.MerkleTreeLeaf;
+import be.unamur.ct.decode.service.DecodeService;
+import be.unamur.ct.decode.service.IssuerCache;
+import be.unamur.ct.download.client.EntriesParser;
+import be.unamur.ct.download.model.LogEntry;
+import be.unamur.ct.download.model.LogList;
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x500.style.IETFUtils;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class MerkleTreeLeafTest {
+
+    private LogList entries;
+
+
+    @Before
+    public void setup() throws IOException {
+        InputStream input = getClass().getClassLoader().getResourceAsStream("json/log.json");
+        entries = new EntriesParser().parse(new ByteArrayInputStream(IOUtils.toByteArray(input)), 0);
+    }
+
+
+    @Test
+    public void testX509Entry() throws IOException {
+        LogEntry entry = entries.get(1);
+        MerkleTreeLeaf leaf = MerkleTreeLeaf.parse(entry.getLeafInput());
+
+        assertThat(leaf.getVersion()).isEqualTo(0);
+        assertThat(leaf.getLeafType()).isEqualTo(0);
+        assertThat(leaf.isX509()).isTrue();
+        assertThat(leaf.getTimestamp()).isEqualTo(entry.getTimestamp()).isGreaterThan(0);
+        assertThat(MerkleTreeLeaf.readTimestamp(Arrays.copyOf(entry.getLeafInput(), 9))).isEqualTo(-1);
+        assertThat(leaf.getIssuerKeyHash()).isNull();
+        assertThat(leaf.getCertificateOffset()).isEqualTo(15);
+
+        // The certificate is read in place, without being copied
+        byte[] copy = Arrays.copyOfRange(entry.getLeafInput(), 15, 15 + leaf.getCertificateLength());
+        X509CertificateHolder holder = DecodeService.certificateHolder(leaf.getData(), leaf.getCertificateOffset(),
+                leaf.getCertificateLength());
+        assertThat(holder).isEqualTo(new X509CertificateHolder(copy));
+        assertThat(leaf.getCertificate()).isEqualTo(ByteBuffer.wrap(copy));
+    }
+
+
+    @Test
+    public void testPrecertEntry() {
+        MerkleTreeLeaf leaf = MerkleTreeLeaf.parse(entries.get(0).getLeafInput());
+
+        assertThat(leaf.isPrecert()).isTrue();
+        assertThat(leaf.getIssuerKeyHash().remaining()).isEqualTo(32);
+        assertThat(leaf.getCertificateOffset()).isEqualTo(15 + 32);
+    }
+
+
+    @Test
+    public void testChains() throws IOException {
+        for (LogEntry entry : entries) {
+            MerkleTreeLeaf leaf = MerkleTreeLeaf.parse(entry.getLeafInput());
+            CertificateChain chain = CertificateChain.parse(entry.getExtraData(), leaf.getEntryType());
+
+            assertThat(chain.size()).isGreaterThan(0);
+            assertThat(chain.hasPrecertificate()).isEqualTo(leaf.isPrecert());
+            for (int i = 0; i < chain.size(); i++) {
+                X509CertificateHolder holder = DecodeService.certificateHolder(chain.getData(), chain.getOffset(i),
+                        chain.getLength(i));
+                assertThat(holder.getSubject()).isNotNull();
+            }
+
+            // The issuer of every certificate is the subject of the next one
+            for (int i = 0; i < chain.size() - 1; i++) {
+                assertThat(DecodeService.certificateHolder(chain.getData(), chain.getOffset(i), chain.getLength(i))
+                        .getIssuer()).isEqualTo(DecodeService.certificateHolder(chain.getData(),
+                        chain.getOffset(i + 1), chain.getLength(i + 1)).getSubject());
+            }
+        }
+    }
+
+
+    @Test
+    public void testSearchRoot() throws IOException, NotAValidDomainException {
+        DecodeService decodeService = new DecodeService();
+        IssuerCache issuerCache = new IssuerCache(16);
+        ReflectionTestUtils.setField(decodeService, "issuerCache", issuerCache);
+        for (LogEntry entry : entries) {
+            MerkleTreeLeaf leaf = MerkleTreeLeaf.parse(entry.getLeafInput());
+            CertificateChain chain = CertificateChain.parse(entry.getExtraData(), leaf.getEntryType());
+            X509CertificateHolder root = DecodeService.certificateHolder(chain.getData(),
+                    chain.getOffset(chain.getRootIndex()), chain.getLength(chain.getRootIndex()));
+
+            assertThat(decodeService.searchRoot(entry.getExtraData(), leaf.getEntryType()))
+                    .isEqualTo(IETFUtils.valueToString(root.getSubject().getRDNs(BCStyle.CN)[0].getFirst().getValue()));
+        }
+
+        // Every root is parsed once, then found again by its fingerprint
+        assertThat(issuerCache.getMisses()).isEqualTo(issuerCache.size());
+        for (LogEntry entry : entries) {
+            decodeService.searchRoot(entry.getExtraData(), MerkleTreeLeaf.parse(entry.getLeafInput()).getEntryType());
+        }
+        assertThat(issuerCache.getMisses()).isEqualTo(issuerCache.size());
+        assertThat(issuerCache.getHits()).isGreaterThanOrEqualTo(entries.size());
+    }
+
+
+    @Test
+    public void testIssuerCacheEviction() {
+        List<byte[]> certificates = new ArrayList<>();
+        for (LogEntry entry : entries) {
+            MerkleTreeLeaf leaf = MerkleTreeLeaf.parse(entry.getLeafInput());
+            CertificateChain chain = CertificateChain.parse(entry.getExtraData(), leaf.getEntryType());
+            for (int i = 0; i < chain.size(); i++) {
+                certificates.add(Arrays.copyOfRange(chain.getData(), chain.getOffset(i),
+                        chain.getOffset(i) + chain.getLength(i)));
+            }
+        }
+
+        IssuerCache issuerCache = new IssuerCache(1);
+        assertThat(issuerCache.warmUp(certificates)).isGreaterThan(1);
+        assertThat(issuerCache.size()).isEqualTo(1);
+        assertThat(issuerCache.warmUp(Collections.singletonList(new byte[]{0x30, 0x00}))).isEqualTo(0);
+    }
+
+
+    @Test(expected = NotAValidDomainException.class)
+    public void testSearchRootTruncated() throws NotAValidDomainException {
+        byte[] extra = entries.get(1).getExtraData();
+        DecodeService decodeService = new DecodeService();
+        ReflectionTestUtils.setField(decodeService, "issuerCache", new IssuerCache(16));
+        decodeService.searchRoot(Arrays.copyOf(extra, extra.length - 1));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedLeaf() {
+        byte[] leaf = entries.get(1).getLeafInput();
+        MerkleTreeLeaf.parse(Arrays.copyOf(leaf, leaf.length / 2));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedChain() {
+        byte[] extra = entries.get(1).getExtraData();
+        CertificateChain.parse(Arrays.copyOf(extra, extra.length - 1), MerkleTreeLeaf.X509_ENTRY);
+    }
+}
@@ -0,0 +1,63 @@
+package be.unamur.ct;
+
+
+import be.unamur.ct.download.model.PollInterval;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class PollIntervalTest {
+
+    // Bounds of 1 s and 60 s, about 256 new entries wanted at each poll
+    private PollInterval interval(Long saved) {
+        return new PollInterval(1000, 60000, 256, saved, new Date(0));
+    }
+
+
+    @Test
+    public void testGrowsWithoutNewEntries(){
+        PollInterval interval = interval(null);
+        assertEquals(1000, interval.getInterval());
+
+        // The delay grows by half at every poll finding nothing new
+        assertEquals(1500, interval.adapt(0, new Date(1000)));
+        assertEquals(2250, interval.adapt(0, new Date(2500)));
+        assertEquals(3375, interval.adapt(0, new Date(4750)));
+        assertEquals(0, interval.getRate(), 0.0);
+    }
+
+
+    @Test
+    public void testShrinksWithNewEntries(){
+        PollInterval interval = interval(40000L);
+
+        // 2560 entries in 40 s: 0.064 entries per ms, 256 entries are added in 4 s
+        assertEquals(4000, interval.adapt(2560, new Date(40000)));
+        assertEquals(0.064, interval.getRate(), 0.0001);
+
+        // The log grows faster, the rate is smoothed over the polls: (0.064 + 0.512) / 2 = 0.288 entries per ms
+        // 256 entries are added in 888 ms, shorter than the minimum delay
+        assertEquals(1000, interval.adapt(2048, new Date(44000)));
+        assertEquals(0.288, interval.getRate(), 0.0001);
+        assertEquals(new Date(44000), interval.getLastPoll());
+    }
+
+
+    @Test
+    public void testBounds(){
+        // Far more entries than the target never poll faster than the minimum delay
+        PollInterval fast = interval(null);
+        assertEquals(1000, fast.adapt(1000000, new Date(1000)));
+
+        // A log growing slowly, then not at all, is never polled slower than the maximum delay
+        PollInterval slow = interval(50000L);
+        assertEquals(60000, slow.adapt(1, new Date(50000)));
+        assertEquals(60000, slow.adapt(0, new Date(110000)));
+
+        // A delay saved with other bounds is brought back within the bounds at the first poll
+        PollInterval saved = interval(500000L);
+        assertEquals(60000, saved.adapt(0, new Date(500000)));
+    }
+}
@@ -0,0 +1,115 @@
+package be.unamur.ct;
+
+
+import be.unamur.ct.download.model.RangeSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+public class RangeSetTest {
+
+    @Test
+    public void testAddMerges() {
+        RangeSet set = new RangeSet();
+
+        assertTrue(set.add(10, 19));
+        assertTrue(set.add(30, 39));
+        assertTrue(set.add(20, 29));
+        assertFalse(set.add(15, 25));
+
+        assertEquals(1, set.getSize());
+        assertEquals(30, set.getCount());
+        assertTrue(set.contains(10));
+        assertTrue(set.contains(39));
+        assertFalse(set.contains(9));
+        assertFalse(set.contains(40));
+    }
+
+
+    @Test
+    public void testAddOverlapping() {
+        RangeSet set = new RangeSet();
+        set.add(0, 9);
+        set.add(20, 29);
+        set.add(40, 49);
+        set.add(5, 44);
+
+        assertEquals(1, set.getSize());
+        assertEquals(50, set.getCount());
+    }
+
+
+    @Test
+    public void testOutOfOrder() {
+        List<Integer> pages = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            pages.add(i);
+        }
+        Collections.shuffle(pages, new Random(42));
+
+        RangeSet set = new RangeSet();
+        for (int page : pages) {
+            set.add(page * 100L, page * 100L + 99);
+        }
+
+        assertEquals(1, set.getSize());
+        assertEquals(100000, set.getCount());
+        assertTrue(set.gaps(0, 99999).isEmpty());
+    }
+
+
+    @Test
+    public void testGaps() {
+        RangeSet set = new RangeSet();
+        set.add(10, 19);
+        set.add(30, 39);
+
+        List<long[]> gaps = set.gaps(0, 49);
+        assertEquals(3, gaps.size());
+        assertArrayEquals(new long[]{0, 9}, gaps.get(0));
+        assertArrayEquals(new long[]{20, 29}, gaps.get(1));
+        assertArrayEquals(new long[]{40, 49}, gaps.get(2));
+
+        gaps = set.gaps(15, 35);
+        assertEquals(1, gaps.size());
+        assertArrayEquals(new long[]{20, 29}, gaps.get(0));
+
+        assertTrue(set.gaps(12, 18).isEmpty());
+        assertTrue(set.gaps(0, -1).isEmpty());
+    }
+
+
+    @Test
+    public void testEncoding() {
+        RangeSet set = new RangeSet();
+        set.add(0, 999999);
+        set.add(1000100, 4000000000L);
+        set.add(4000000005L, 4000000005L);
+
+        byte[] bytes = set.toBytes();
+        RangeSet decoded = RangeSet.fromBytes(bytes);
+
+        assertTrue(bytes.length < 20);
+        assertEquals(set.toString(), decoded.toString());
+        assertEquals(set.getCount(), decoded.getCount());
+        assertEquals(0, RangeSet.fromBytes(null).getCount());
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedEncoding() {
+        RangeSet set = new RangeSet();
+        set.add(1000, 1000000);
+
+        byte[] bytes = set.toBytes();
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        RangeSet.fromBytes(truncated);
+    }
+}
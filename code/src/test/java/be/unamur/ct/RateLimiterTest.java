@@ -0,0 +1,72 @@
+package be.unamur.ct;
+
+
+import be.unamur.ct.download.client.RateLimiter;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+
+
+    @Test
+    public void testReserveAtRate(){
+        RateLimiter limiter = new RateLimiter(1, 10, 500, 60000);
+        // The first token is available right away, then one token every 100 ms
+        assertEquals(0, limiter.reserve(1000));
+        assertTrue(limiter.reserve(1000) > 0);
+        assertEquals(0, limiter.reserve(1100));
+        assertEquals(0, limiter.getBackoff());
+    }
+
+
+    @Test
+    public void testExponentialBackoff(){
+        RateLimiter limiter = new RateLimiter(1, 10, 500, 1500);
+
+        limiter.onFailure(0, 1000);
+        assertEquals(500, limiter.reserve(1000));
+        assertEquals(5.0, limiter.getRate(), 0.001);
+
+        limiter.onFailure(0, 1000);
+        assertEquals(1000, limiter.reserve(1000));
+
+        limiter.onFailure(0, 1000);
+        assertEquals(1500, limiter.reserve(1000));
+        assertEquals(1.25, limiter.getRate(), 0.001);
+        assertEquals(3, limiter.getFailures());
+    }
+
+
+    @Test
+    public void testRetryAfter(){
+        RateLimiter limiter = new RateLimiter(1, 10, 500, 60000);
+
+        limiter.onFailure(3000, 1000);
+
+
+        assertEquals(3000, limiter.reserve(1000));
+        assertEquals(1000, limiter.reserve(3000));
+
+        // Once the delay is over, requests resume at half the rate
+        assertEquals(200, limiter.reserve(4000));
+        assertEquals(0, limiter.reserve(4200));
+    }
+
+
+    @Test
+    public void testRecovery(){
+        RateLimiter limiter = new RateLimiter(1, 10, 500, 60000);
+
+        limiter.onFailure(0, 1000);
+        limiter.onFailure(0, 1000);
+        for (int i = 0; i < 10; i++) {
+            limiter.onSuccess();
+        }
+
+
+        assertEquals(0, limiter.getFailures());
+        assertTrue(limiter.getRate() > 2.5);
+        assertTrue(limiter.getRate() <= 10);
+    }
+}
@@ -11,6 +11,9 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.util.Date;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 @RunWith(SpringRunner.class)
@@ -57,4 +60,45 @@ public class ServerRepositoryTest {
         assertTrue(exists1);
         assertFalse(exists2);
     }
+
+
+    @Test
+    public void testUpdatePageSize(){
+        int updated = serverDao.updatePageSize(srv1.getId(), 256);
+        entityManager.clear();
+
+
+        assertEquals(1, updated);
+        assertEquals(Integer.valueOf(256), serverDao.findById(srv1.getId()).getPageSize());
+        assertNull(serverDao.findById(srv2.getId()).getPageSize());
+    }
+
+
+    @Test
+    public void testFindByFollowTrue(){
+        serverDao.updateFollow(srv2.getId(), true);
+        entityManager.clear();
+
+        List<Server> followed = serverDao.findByFollowTrue();
+
+
+        assertEquals(1, followed.size());
+        assertEquals(srv2.getId(), followed.get(0).getId());
+    }
+
+
+    @Test
+    public void testClaimTreeSize(){
+        int first = serverDao.claimTreeSize(srv1.getId(), 0, 100, new Date());
+        int stale = serverDao.claimTreeSize(srv1.getId(), 0, 150, new Date());
+        int next = serverDao.claimTreeSize(srv1.getId(), 100, 200, new Date());
+        entityManager.clear();
+
+
+        assertEquals(1, first);
+        assertEquals(0, stale);
+        assertEquals(1, next);
+        assertEquals(Long.valueOf(200), serverDao.findById(srv1.getId()).getTreeSize());
+        assertNotNull(serverDao.findById(srv1.getId()).getLastPoll());
+    }
 }
@@ -3,19 +3,26 @@ package be.unamur.ct;
 
 import be.unamur.ct.data.dao.ServerDao;
 import be.unamur.ct.data.dao.SliceDao;
+import be.unamur.ct.data.service.CheckpointService;
 import be.unamur.ct.download.model.Server;
 import be.unamur.ct.download.model.Slice;
+import be.unamur.ct.thread.ThreadPool;
 import com.google.common.collect.Ordering;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static org.junit.Assert.*;
 
@@ -87,4 +94,125 @@ public class SliceRepositoryTest {
         assertTrue(sorted);
     }
 
+
+    @Test
+    public void testCountLeftByServer(){
+        slice1.setNext(100);
+        slice2.setNext(150);
+        sliceDao.save(slice1);
+        sliceDao.save(slice2);
+        entityManager.flush();
+
+        List<Object[]> left = sliceDao.countLeftByServer();
+
+
+        assertEquals(1, left.size());
+        assertEquals(server.getId(), ((Number) left.get(0)[0]).longValue());
+        assertEquals(2, ((Number) left.get(0)[1]).longValue());
+        assertEquals(150, ((Number) left.get(0)[2]).longValue());
+    }
+
+
+    @Test
+    public void testDeleteCompleted(){
+        slice1.setNext(100);
+        slice3.setNext(300);
+        sliceDao.save(slice1);
+        sliceDao.save(slice3);
+        entityManager.flush();
+
+        int deleted = sliceDao.deleteCompleted(server, slice3.getId());
+        entityManager.clear();
+
+
+        assertEquals(1, deleted);
+        assertFalse(sliceDao.existsById(slice1.getId()));
+        assertTrue(sliceDao.existsById(slice2.getId()));
+        assertTrue(sliceDao.existsById(slice3.getId()));
+    }
+
+
+    @Test
+    public void testDescendingSlices(){
+        // Slice 2 downloaded newest first, 30 entries downloaded from its end, slice 3 completely downloaded
+        slice2.setDescending(true);
+        slice2.setNext(170);
+        slice3.setDescending(true);
+        slice3.setNext(200);
+        sliceDao.save(slice2);
+        sliceDao.save(slice3);
+        entityManager.flush();
+
+        List<Object[]> left = sliceDao.countLeftByServer();
+
+        assertEquals(1, left.size());
+        assertEquals(2, ((Number) left.get(0)[1]).longValue());
+        assertEquals(170, ((Number) left.get(0)[2]).longValue());
+
+
+        int deleted = sliceDao.deleteCompleted(server, slice1.getId());
+        entityManager.clear();
+
+        assertEquals(1, deleted);
+        assertTrue(sliceDao.existsById(slice2.getId()));
+        assertFalse(sliceDao.existsById(slice3.getId()));
+    }
+
+
+    @Test
+    public void testFindExistingIds(){
+        sliceDao.deleteById(slice2.getId());
+
+        List<Long> existing = sliceDao.findExistingIds(Arrays.asList(slice1.getId(), slice2.getId(), 999L));
+
+
+        assertEquals(1, existing.size());
+        assertEquals(slice1.getId(), (long) existing.get(0));
+    }
+
+
+    @Test
+    public void testCheckpointDeletedSlice(){
+        CheckpointService checkpointService = new CheckpointService();
+        ReflectionTestUtils.setField(checkpointService, "sliceDao", sliceDao);
+        ReflectionTestUtils.setField(checkpointService, "maxPending", 100);
+
+        // Slice 1 is completed while its progress is still pending, then checkpointed again once deleted
+        slice1.setNext(100);
+        checkpointService.checkpoint(slice1);
+        int deleted = checkpointService.deleteCompleted(server, slice3.getId());
+        checkpointService.checkpoint(slice1);
+        checkpointService.flush();
+        entityManager.clear();
+
+
+        assertEquals(1, deleted);
+        assertFalse(sliceDao.existsById(slice1.getId()));
+        assertEquals(2, sliceDao.findByServerOrderByStartSlice(server).size());
+    }
+
+
+    @Test
+    public void testCheckpointWhileStopping(){
+        // The executor is shut down between the check of the CheckpointService and the flush it submits
+        ScheduledExecutorService stopping = Mockito.mock(ScheduledExecutorService.class);
+        Mockito.doThrow(new RejectedExecutionException("Executor is shut down")).when(stopping).execute(Mockito.any());
+        ReflectionTestUtils.setField(ThreadPool.class, "checkpointExecutor", stopping);
+
+        try {
+            CheckpointService checkpointService = new CheckpointService();
+            ReflectionTestUtils.setField(checkpointService, "sliceDao", sliceDao);
+            ReflectionTestUtils.setField(checkpointService, "maxPending", 1);
+
+            slice1.setNext(50);
+            checkpointService.checkpoint(slice1);
+            checkpointService.flush();
+            entityManager.clear();
+        } finally {
+            ReflectionTestUtils.setField(ThreadPool.class, "checkpointExecutor", null);
+        }
+
+
+        assertEquals(50, entityManager.find(Slice.class, slice1.getId()).getNext());
+    }
 }
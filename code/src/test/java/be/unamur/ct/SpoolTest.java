@@ -0,0 +1,164 @@
+package be.unamur.ct;
+
+
+import be.unamur.ct.download.model.LogEntry;
+import be.unamur.ct.download.model.LogList;
+import be.unamur.ct.spool.model.Spool;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SpoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Each test entry takes 4 + 8 + 4 + 100 + 4 + 50 = 170 bytes in the spool, 6 entries fit in a segment
+    private static final int SEGMENT_SIZE = 1024;
+
+
+    private LogEntry entry(long id) {
+        byte[] leaf = new byte[100];
+        byte[] extra = new byte[50];
+        leaf[0] = (byte) id;
+        extra[49] = (byte) id;
+
+        LogEntry entry = new LogEntry(leaf, extra);
+        entry.setId(id);
+        return entry;
+    }
+
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        Spool spool = new Spool(folder.getRoot(), SEGMENT_SIZE);
+        for (long i = 0; i < 20; i++) {
+            spool.append(entry(i));
+        }
+
+        Spool.Reader reader = spool.reader("decode");
+        for (long i = 0; i < 20; i++) {
+            LogEntry e = reader.next();
+            assertNotNull(e);
+            assertEquals(i, e.getId());
+            assertEquals((byte) i, e.getLeafInput()[0]);
+            assertEquals((byte) i, e.getExtraData()[49]);
+        }
+
+
+        assertNull(reader.next());
+        assertEquals(4, spool.getSegments());
+    }
+
+
+    @Test
+    public void testAppendList() throws IOException {
+        LogList entries = new LogList();
+        for (long i = 0; i < 20; i++) {
+            entries.addEntry(entry(i));
+        }
+
+        // Entries 5 to 14 of the list, written across several segments
+        Spool spool = new Spool(folder.getRoot(), SEGMENT_SIZE);
+        assertEquals(10, spool.append(entries, 5, 15));
+        assertEquals(0, spool.append(entries, 15, 15));
+
+        Spool.Reader reader = spool.reader("decode");
+        for (long i = 5; i < 15; i++) {
+            assertEquals(i, reader.next().getId());
+        }
+        assertNull(reader.next());
+        assertEquals(2, spool.getSegments());
+    }
+
+
+    @Test
+    public void testResumeAfterRestart() throws IOException {
+        Spool spool = new Spool(folder.getRoot(), SEGMENT_SIZE);
+        for (long i = 0; i < 10; i++) {
+            spool.append(entry(i));
+        }
+
+        Spool.Reader reader = spool.reader("decode");
+        for (int i = 0; i < 4; i++) {
+            reader.next();
+        }
+        spool.commit("decode", reader.getPosition());
+
+        // Reopening the spool resumes writing after the last entry and reading after the committed offset
+        Spool reopened = new Spool(folder.getRoot(), SEGMENT_SIZE);
+        reopened.append(entry(10));
+        Spool.Reader resumed = reopened.reader("decode");
+
+
+        for (long i = 4; i <= 10; i++) {
+            assertEquals(i, resumed.next().getId());
+        }
+        assertNull(resumed.next());
+    }
+
+
+    @Test
+    public void testConsumedSegmentsDeleted() throws IOException {
+        Spool spool = new Spool(folder.getRoot(), SEGMENT_SIZE);
+        for (long i = 0; i < 20; i++) {
+            spool.append(entry(i));
+        }
+
+        Spool.Reader decode = spool.reader("decode");
+        Spool.Reader other = spool.reader("other");
+        for (int i = 0; i < 13; i++) {
+            decode.next();
+        }
+        spool.commit("decode", decode.getPosition());
+
+        // Segments are kept until every stage has consumed them
+        assertEquals(4, spool.getSegments());
+
+        for (int i = 0; i < 20; i++) {
+            other.next();
+        }
+        spool.commit("other", other.getPosition());
+
+
+        assertEquals(2, spool.getSegments());
+        assertEquals(2, folder.getRoot().listFiles((dir, name) -> name.endsWith(".seg")).length);
+        assertEquals(13, decode.next().getId());
+    }
+
+
+    @Test
+    public void testAppendWaitsWhenFull() throws Exception {
+        // Two entries take the maximum size, the third one waits until an entry is committed
+        Spool spool = new Spool(folder.getRoot(), SEGMENT_SIZE, 340);
+        Spool.Reader reader = spool.reader("decode");
+        spool.append(entry(0));
+        spool.append(entry(1));
+        assertTrue(spool.isFull());
+
+        CompletableFuture<Long> third = CompletableFuture.supplyAsync(() -> {
+            try {
+                return spool.append(entry(2));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(third.isDone());
+
+        reader.next();
+        spool.commit("decode", reader.getPosition());
+
+
+        assertEquals(510L, (long) third.get(5, TimeUnit.SECONDS));
+        assertEquals(340, spool.getPending());
+        assertTrue(spool.isFull());
+    }
+}
@@ -0,0 +1,57 @@
+package be.unamur.ct;
+
+
+import be.unamur.ct.decode.model.SuffixTrie;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+
+public class SuffixTrieTest {
+
+    private final SuffixTrie trie = new SuffixTrie(".be", ".vlaanderen", " .Brussels ", "unamur.eu");
+
+
+    private boolean matchesBytes(String name) {
+        byte[] data = ("xx" + name + "yy").getBytes(StandardCharsets.UTF_8);
+        return trie.matches(data, 2, data.length - 4);
+    }
+
+
+    @Test
+    public void testSuffixes() {
+        assertThat(trie.size()).isEqualTo(4);
+
+        for (String name : new String[]{"www.unamur.be", "*.gent.VLAANDEREN", "brussels.brussels", "a.b.c.be"}) {
+            assertThat(trie.matches(name)).as(name).isTrue();
+            assertThat(matchesBytes(name)).as(name).isTrue();
+        }
+        for (String name : new String[]{"be", "www.unamur.bee", "www.unamurbe", "example.com", "", "www.été.fr"}) {
+            assertThat(trie.matches(name)).as(name).isFalse();
+            assertThat(matchesBytes(name)).as(name).isFalse();
+        }
+    }
+
+
+    @Test
+    public void testZones() {
+        for (String name : new String[]{"unamur.eu", "www.unamur.eu", "*.info.UNAMUR.eu"}) {
+            assertThat(trie.matches(name)).as(name).isTrue();
+            assertThat(matchesBytes(name)).as(name).isTrue();
+        }
+        for (String name : new String[]{"fakeunamur.eu", "namur.eu", "www.unamur.eu.com"}) {
+            assertThat(trie.matches(name)).as(name).isFalse();
+            assertThat(matchesBytes(name)).as(name).isFalse();
+        }
+    }
+
+
+    @Test
+    public void testInvalidSuffixes() {
+        assertThatThrownBy(() -> new SuffixTrie(" ")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SuffixTrie("www.été.fr")).isInstanceOf(IllegalArgumentException.class);
+    }
+}